@@ -0,0 +1,57 @@
+package io.orkes.kiosk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+// HttpUtils#isCausedByGoAway is called for every failed request, on cause chains as deep as the async plumbing makes
+// them, both when the cause is a GOAWAY and when it isn't.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GoAwayBenchmark {
+    @Param({ "1", "8", "32" })
+    public int depth;
+
+    private Throwable goAway;
+    private Throwable reset;
+
+    @Setup
+    public void setup() {
+        this.goAway = wrap(new IOException("Received GOAWAY from server"), this.depth);
+        this.reset = wrap(new IOException("Connection reset"), this.depth);
+    }
+
+    private static Throwable wrap(Throwable cause, int depth) {
+        for (int i = 1; i < depth; ++i) {
+            cause = new CompletionException(cause);
+        }
+
+        return cause;
+    }
+
+    @Benchmark
+    public boolean goAway() {
+        return HttpUtils.isCausedByGoAway(this.goAway);
+    }
+
+    @Benchmark
+    public boolean otherIOException() {
+        return HttpUtils.isCausedByGoAway(this.reset);
+    }
+}
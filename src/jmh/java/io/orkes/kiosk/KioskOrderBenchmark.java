@@ -0,0 +1,50 @@
+package io.orkes.kiosk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A whole simulated kiosk order (execute, three AddItems and a Checkout) with no think time, through the real client
+// stack against the in-process mock server. The mock answers instantly, so this is the client's own cost per order,
+// loopback HTTP included.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KioskOrderBenchmark {
+    private KioskApplication application;
+    private LoadTest loadTest;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        this.application = new KioskApplication(ProgramArguments.parse(new String[] { Constants.Arguments.MOCK_CONDUCTOR }));
+        this.loadTest = new LoadTest(this.application, LoadTest.Simulator.VIRTUAL_THREADS, Duration.ZERO);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.loadTest.stop();
+        this.application.stop();
+    }
+
+    @Benchmark
+    public Object order() {
+        return this.loadTest.startKioskOrder(this.sequence.getAndIncrement(), System.nanoTime()).join();
+    }
+}
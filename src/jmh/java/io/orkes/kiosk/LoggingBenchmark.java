@@ -0,0 +1,103 @@
+package io.orkes.kiosk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static java.util.FormatProcessor.FMT;
+
+// Formatting a log line with AsyncLogHandler against the Formatter that Logging used to install on every logger, with
+// and without a stack trace.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoggingBenchmark {
+    private AsyncLogHandler handler;
+    private StringBuilder line;
+
+    private LogRecord message;
+    private LogRecord error;
+
+    @Setup
+    public void setup() {
+        // Registers the logger names so both formatters pad to the same width.
+        Logging.getLogger(KioskApplication.class);
+        Logging.getLogger(LoadTest.class);
+
+        this.handler = new AsyncLogHandler(1024);
+        this.line = new StringBuilder(256);
+
+        this.message = new LogRecord(Level.INFO, "Waiting for 1234 workflows to complete...");
+        this.message.setLoggerName("LoadTest");
+
+        this.error = new LogRecord(Level.SEVERE, "Error in load test: Failed to resume workflow 2d3a4c0e-7d8f-11ef-9c1a-0242ac120002: 500");
+        this.error.setLoggerName("LoadTest");
+        this.error.setThrown(new LoadTest.KioskOrderException(LoadTest.FailureReason.SIGNAL_REJECTED, "Failed to resume workflow"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.handler.close();
+    }
+
+    private static String legacyFormat(LogRecord record) {
+        var error = "";
+        var thrown = record.getThrown();
+
+        if (thrown != null) {
+            StringWriter writer = new StringWriter();
+
+            thrown.printStackTrace(new PrintWriter(writer));
+
+            error = STR."\n\t\{String.join("\n\t", writer.toString().split("\n"))}";
+        }
+
+        var name = String.format("%" + Logging.maxLoggerNameLength() + "s", record.getLoggerName());
+
+        return FMT."\{record.getInstant().truncatedTo(ChronoUnit.MILLIS)} [\{record.getLevel()}] \{name} - \{record.getMessage()}\{error}\n";
+    }
+
+    @Benchmark
+    public String messageLegacy() {
+        return legacyFormat(this.message);
+    }
+
+    @Benchmark
+    public int messageAsyncHandler() {
+        this.line.setLength(0);
+        this.handler.format(this.message, this.line);
+
+        return this.line.length();
+    }
+
+    @Benchmark
+    public String errorLegacy() {
+        return legacyFormat(this.error);
+    }
+
+    @Benchmark
+    public int errorAsyncHandler() {
+        this.line.setLength(0);
+        this.handler.format(this.error, this.line);
+
+        return this.line.length();
+    }
+}
@@ -0,0 +1,111 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Building the execute and signal requests sent for every kiosk order, the way KioskApplication originally did it
+// (Jackson and string templates per request) against RequestTemplates.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestBenchmark {
+    private static final String ENDPOINT = "https://developer.orkescloud.com";
+    private static final String WORKFLOW_ID = "2d3a4c0e-7d8f-11ef-9c1a-0242ac120002";
+
+    private final ObjectMapper json = new ObjectMapper();
+    private RequestTemplates templates;
+    private long sequence;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        this.templates = new RequestTemplates(this.json, ENDPOINT, "KioskOrder", 1,
+                Constants.Arguments.DEFAULT_API_TEST_METHOD, Constants.Arguments.DEFAULT_API_TEST_URI);
+
+        // The templated body must be byte-for-byte what Jackson produced before, or the comparison is meaningless.
+        var input = new LinkedHashMap<String, Object>();
+
+        input.put("method", Constants.Arguments.DEFAULT_API_TEST_METHOD);
+        input.put("uri", Constants.Arguments.DEFAULT_API_TEST_URI);
+        input.put("sequence", "\"1234567\"");
+
+        if (!Arrays.equals(this.json.writeValueAsBytes(Map.of("input", input)), this.templates.executeBody(1234567))) {
+            throw new IllegalStateException("Templated execute body differs from the Jackson encoding");
+        }
+    }
+
+    private HttpRequest.Builder newRequestBuilder() {
+        return HttpRequest.newBuilder().header("X-Authorization", "token");
+    }
+
+    @Benchmark
+    public HttpRequest executeRequestJackson() throws JsonProcessingException {
+        var input = Map.of("sequence", '"' + Long.toString(this.sequence++) + '"');
+        var workflowInput = new LinkedHashMap<>(input.size() + 1);
+
+        workflowInput.put("method", Constants.Arguments.DEFAULT_API_TEST_METHOD);
+        workflowInput.put("uri", Constants.Arguments.DEFAULT_API_TEST_URI);
+        workflowInput.putAll(input);
+
+        return this.newRequestBuilder()
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(this.json.writeValueAsString(Map.of("input", workflowInput))))
+                .uri(URI.create(STR."\{ENDPOINT}/api/workflow/execute/KioskOrder/1?waitForSeconds=3&returnStrategy=BLOCKING_TASK_INPUT&consistency=SYNCHRONOUS"))
+                .build();
+    }
+
+    @Benchmark
+    public HttpRequest executeRequestTemplated() {
+        return this.newRequestBuilder()
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(this.templates.executeBody(this.sequence++)))
+                .uri(this.templates.executeUri())
+                .build();
+    }
+
+    @Benchmark
+    public HttpRequest signalRequestTemplateString() {
+        var action = "AddItem";
+
+        return this.newRequestBuilder()
+                .header("Content-Type", "application/json")
+                .header("X-Kiosk-Action", action)
+                .POST(HttpRequest.BodyPublishers.ofString(STR."""
+                        {
+                            "action": "\{action}"
+                        }
+                        """))
+                .uri(URI.create(STR."\{ENDPOINT}/api/tasks/\{WORKFLOW_ID}/COMPLETED/signal/sync?returnStrategy=BLOCKING_TASK_INPUT"))
+                .build();
+    }
+
+    // Includes resolving the signal URI, which the load test only does once per order.
+    @Benchmark
+    public HttpRequest signalRequestTemplated() {
+        return this.newRequestBuilder()
+                .header("Content-Type", "application/json")
+                .header("X-Kiosk-Action", "AddItem")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(this.templates.signalBody("AddItem")))
+                .uri(this.templates.signalUri(WORKFLOW_ID))
+                .build();
+    }
+}
@@ -0,0 +1,76 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Reading the one field the application needs out of execute and signal responses: building a Jackson tree, as
+// /start-workflow/ used to, against streaming it with ResponseBodies. The bodies have the shape the mock server (and
+// Conductor, with returnStrategy=BLOCKING_TASK_INPUT) sends.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseParsingBenchmark {
+    private static final String WORKFLOW_ID = "2d3a4c0e-7d8f-11ef-9c1a-0242ac120002";
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    private byte[] executeResponse;
+    private byte[] signalResponse;
+
+    @Setup
+    public void setup() throws IOException {
+        this.executeResponse = this.workflowState("RUNNING", "BLOCKING_TASK_INPUT", List.of(Map.of("taskType", "YIELD", "status", "IN_PROGRESS")));
+        this.signalResponse = this.workflowState("COMPLETED", "TARGET_WORKFLOW", List.of());
+    }
+
+    private byte[] workflowState(String status, String responseType, List<?> blockingTasks) throws IOException {
+        var body = new LinkedHashMap<String, Object>();
+
+        body.put("workflowId", WORKFLOW_ID);
+        body.put("targetWorkflowId", WORKFLOW_ID);
+        body.put("targetWorkflowStatus", status);
+        body.put("responseType", responseType);
+        body.put("blockingTasks", blockingTasks);
+
+        return this.json.writeValueAsBytes(body);
+    }
+
+    @Benchmark
+    public String executeWorkflowIdTree() throws IOException {
+        return this.json.readTree(this.executeResponse).get("workflowId").asText();
+    }
+
+    @Benchmark
+    public String executeWorkflowIdStreaming() throws IOException {
+        return ResponseBodies.extractField(new ByteArrayInputStream(this.executeResponse), "workflowId").orElseThrow();
+    }
+
+    @Benchmark
+    public String signalStatusTree() throws IOException {
+        return this.json.readTree(this.signalResponse).get("targetWorkflowStatus").asText();
+    }
+
+    @Benchmark
+    public String signalStatusStreaming() throws IOException {
+        return ResponseBodies.extractField(new ByteArrayInputStream(this.signalResponse), "targetWorkflowStatus").orElseThrow();
+    }
+}
@@ -0,0 +1,146 @@
+package io.orkes.kiosk;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Compares how many concurrent kiosks each LoadTest.Simulator can hold, and what each one costs in heap. Not a JMH
+// benchmark, but it lives with them so that it stays out of the application jar. Run with:
+//
+//   gradle simulatorBenchmark [-Pheap=256m] [-PmaxKiosks=1048576]
+//
+// For each simulator, a fresh JVM with the given maximum heap (256m by default) is asked to start a growing number of
+// kiosk orders against a mock server running in this process. The think time is long enough that every kiosk is parked
+// waiting for it once its workflow has started, which is where a kiosk spends nearly all of its life in a real run. The
+// heap still in use after a GC at that point, less what was in use before any kiosk was started, is the heap per kiosk.
+// The count is doubled until the JVM runs out of memory, fails to start every order or takes too long about it; the
+// last count that worked is the maximum sustainable concurrency.
+public class SimulatorBenchmark {
+    private static final int MIN_KIOSKS = 1_000;
+    private static final Duration THINK_TIME = Duration.ofMinutes(10);
+    private static final Duration RUN_TIMEOUT = Duration.ofMinutes(3);
+
+    private record Result(int kiosks, boolean sustained, double bytesPerKiosk) {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("run")) {
+            run(LoadTest.Simulator.valueOf(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+
+        var heap = args.length > 0 ? args[0] : "256m";
+        var maxKiosks = args.length > 1 ? Integer.parseInt(args[1]) : 1_048_576;
+
+        var mock = new MockConductorServer(new MockConductorServer.Options(0, LatencyDistribution.ZERO, LatencyDistribution.ZERO,
+                LatencyDistribution.ZERO, 0, 500, 0, Duration.ofHours(1)));
+        var endpoint = mock.start();
+
+        try {
+            for (var simulator : LoadTest.Simulator.values()) {
+                Result last = null;
+
+                for (var kiosks = MIN_KIOSKS; kiosks <= maxKiosks; kiosks *= 2) {
+                    var result = fork(simulator, kiosks, heap, endpoint);
+
+                    System.out.printf("%-15s %8d kiosks: %s%n", simulator, kiosks,
+                            result.sustained() ? String.format("%,.0f bytes per kiosk", result.bytesPerKiosk()) : "not sustained");
+
+                    if (!result.sustained()) {
+                        break;
+                    }
+
+                    last = result;
+                }
+
+                if (last == null) {
+                    System.out.printf("%-15s could not sustain %d kiosks with a %s heap%n%n", simulator, MIN_KIOSKS, heap);
+                } else {
+                    System.out.printf("%-15s sustained %d kiosks with a %s heap, %,.0f bytes per kiosk%n%n", simulator, last.kiosks(), heap, last.bytesPerKiosk());
+                }
+            }
+        } finally {
+            mock.stop();
+        }
+    }
+
+    private static Result fork(LoadTest.Simulator simulator, int kiosks, String heap, String endpoint) throws Exception {
+        var java = ProcessHandle.current().info().command().orElse("java");
+        var command = new ArrayList<>(List.of(java, "--enable-preview", STR."-Xmx\{heap}", "-XX:+ExitOnOutOfMemoryError",
+                "-cp", System.getProperty("java.class.path"), SimulatorBenchmark.class.getName(), "run", simulator.name(), Integer.toString(kiosks)));
+
+        // The output goes to a file rather than a pipe, so that waiting for the child is bounded by RUN_TIMEOUT even if it
+        // hangs with its output still open.
+        var output = Files.createTempFile("simulator-benchmark", ".out");
+        var builder = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .redirectOutput(output.toFile());
+
+        builder.environment().put("CONDUCTOR_SERVER_URL", endpoint);
+
+        try {
+            var process = builder.start();
+
+            if (!process.waitFor(RUN_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return new Result(kiosks, false, Double.NaN);
+            }
+
+            var bytesPerKiosk = Files.readAllLines(output).stream()
+                    .filter(line -> line.startsWith("bytesPerKiosk="))
+                    .mapToDouble(line -> Double.parseDouble(line.substring("bytesPerKiosk=".length())))
+                    .findFirst()
+                    .orElse(Double.NaN);
+
+            return new Result(kiosks, process.exitValue() == 0 && !Double.isNaN(bytesPerKiosk), bytesPerKiosk);
+        } finally {
+            Files.deleteIfExists(output);
+        }
+    }
+
+    // Runs in the forked JVM.
+    private static void run(LoadTest.Simulator simulator, int kiosks) throws Exception {
+        // Enough connections that starting the orders isn't the bottleneck, without opening one per kiosk.
+        var application = new KioskApplication(ProgramArguments.parse(new String[] { "-http-clients=4", "-max-streams-per-connection=64" }));
+        var loadTest = new LoadTest(application, simulator, THINK_TIME);
+
+        var baseline = usedHeapAfterGc();
+        var deadline = System.nanoTime() + RUN_TIMEOUT.toNanos() / 2;
+
+        for (long i = 0; i < kiosks; ++i) {
+            loadTest.startKioskOrder(i, System.nanoTime());
+        }
+
+        // Every kiosk is parked in its first think time once its workflow has started.
+        while (loadTest.latencies().total(PhaseLatencies.Phase.EXECUTE).count() < kiosks) {
+            if (System.nanoTime() > deadline) {
+                System.exit(1);
+            }
+
+            Thread.sleep(100);
+        }
+
+        if (loadTest.latencies().histogram(PhaseLatencies.Phase.EXECUTE, 200).count() != kiosks) {
+            System.exit(1);
+        }
+
+        System.out.println(STR."bytesPerKiosk=\{(double) (usedHeapAfterGc() - baseline) / kiosks}");
+        System.out.flush();
+
+        // The kiosks would otherwise keep the JVM alive for the rest of the think time.
+        System.exit(0);
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        var memory = ManagementFactory.getMemoryMXBean();
+
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+            Thread.sleep(200);
+        }
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
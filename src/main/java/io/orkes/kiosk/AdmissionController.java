@@ -0,0 +1,251 @@
+package io.orkes.kiosk;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounds how many requests an endpoint works on at once. Every handler runs on its own virtual thread, so without a bound
+// a burst of requests turns straight into a burst of upstream calls, each holding memory until Conductor answers.
+//
+// Requests over the concurrency limit wait in a bounded FIFO queue. If the queue is full the request is turned away
+// immediately with a 429; if it waits longer than the queue timeout, with a 503. Both carry a Retry-After estimated from
+// how long the queue takes to drain, so well-behaved clients back off instead of hammering.
+//
+// The limit adapts to the upstream (unless configured not to), much like TCP congestion control: it grows by about one
+// for every limit's worth of requests while latency holds steady, and shrinks by 10% when requests fail or the recent
+// average latency climbs well above the long-term one, which is what an upstream queueing up looks like. Comparing
+// averages rather than against the fastest request keeps a naturally spread out latency from reading as congestion. A
+// slow upstream thus gets fewer concurrent requests rather than a longer queue of its own.
+public class AdmissionController implements HttpHandler {
+    public record Options(int limit, int maxLimit, int queueSize, Duration queueTimeout, boolean adaptive) {
+        public static Options defaults() {
+            return new Options(64, 1024, 256, Duration.ofSeconds(1), true);
+        }
+    }
+
+    private enum Outcome {
+        ADMITTED,
+        QUEUE_FULL,
+        QUEUE_TIMEOUT
+    }
+
+    private static final int MIN_LIMIT = 1;
+    private static final double BACKOFF = 0.9;
+
+    // A recent average latency over twice the long-term one means the upstream is falling behind.
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    // Weights of the exponential moving averages: roughly the last 10 and the last 500 requests.
+    private static final double SHORT_TERM_WEIGHT = 0.1;
+    private static final double LONG_TERM_WEIGHT = 0.002;
+
+    private static final long MAX_RETRY_AFTER_SECONDS = 60;
+
+    private final String endpoint;
+    private final Options options;
+    private final HttpHandler delegate;
+
+    // Fair, so that waiting requests are admitted in the order they arrived.
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = this.lock.newCondition();
+
+    // Written under the lock; volatile so that metrics can read them without it.
+    private volatile double limit;
+    private volatile int inFlight;
+    private volatile int queued;
+
+    // Guarded by the lock.
+    private long lastBackoffNanos;
+    private double shortTermLatencyNanos;
+    private double longTermLatencyNanos;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedQueueFull = new LongAdder();
+    private final LongAdder rejectedQueueTimeout = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+
+    public AdmissionController(String endpoint, Options options, HttpHandler delegate) {
+        this.endpoint = endpoint;
+        this.options = options;
+        this.delegate = delegate;
+        this.limit = Math.max(MIN_LIMIT, Math.min(options.limit(), options.maxLimit()));
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        var arrivedNanos = System.nanoTime();
+        Outcome outcome;
+
+        try {
+            outcome = this.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+            return;
+        }
+
+        var startNanos = System.nanoTime();
+
+        this.queueWait.recordNanos(startNanos - arrivedNanos);
+
+        if (outcome != Outcome.ADMITTED) {
+            this.reject(exchange, outcome);
+            return;
+        }
+
+        this.admitted.increment();
+
+        var failed = true;
+
+        try {
+            this.delegate.handle(exchange);
+
+            var status = exchange.getResponseCode();
+
+            failed = status < 0 || status == 429 || status >= 500;
+        } finally {
+            this.release(System.nanoTime() - startNanos, failed);
+        }
+    }
+
+    private Outcome acquire() throws InterruptedException {
+        this.lock.lock();
+
+        try {
+            // Nobody may jump ahead of requests that are already waiting.
+            if (this.queued == 0 && this.inFlight < (int) this.limit) {
+                ++this.inFlight;
+                return Outcome.ADMITTED;
+            }
+
+            if (this.queued >= this.options.queueSize()) {
+                return Outcome.QUEUE_FULL;
+            }
+
+            ++this.queued;
+
+            try {
+                var remaining = this.options.queueTimeout().toNanos();
+
+                while (this.inFlight >= (int) this.limit) {
+                    if (remaining <= 0) {
+                        return Outcome.QUEUE_TIMEOUT;
+                    }
+
+                    remaining = this.available.awaitNanos(remaining);
+                }
+
+                ++this.inFlight;
+
+                return Outcome.ADMITTED;
+            } finally {
+                --this.queued;
+
+                // Pass the wake-up on if there's still room, e.g. because the limit grew or this request timed out just
+                // as it was signalled.
+                if (this.inFlight < (int) this.limit) {
+                    this.available.signal();
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void release(long latencyNanos, boolean failed) {
+        this.lock.lock();
+
+        try {
+            --this.inFlight;
+
+            if (this.longTermLatencyNanos == 0) {
+                this.shortTermLatencyNanos = latencyNanos;
+                this.longTermLatencyNanos = latencyNanos;
+            } else {
+                this.shortTermLatencyNanos += (latencyNanos - this.shortTermLatencyNanos) * SHORT_TERM_WEIGHT;
+                this.longTermLatencyNanos += (latencyNanos - this.longTermLatencyNanos) * LONG_TERM_WEIGHT;
+            }
+
+            if (this.options.adaptive()) {
+                this.adapt(failed, System.nanoTime());
+            }
+
+            if (this.inFlight < (int) this.limit) {
+                this.available.signal();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void adapt(boolean failed, long now) {
+        if (failed || this.shortTermLatencyNanos > this.longTermLatencyNanos * LATENCY_TOLERANCE) {
+            // At most once per typical request latency, so that one slow burst only counts once.
+            if (now - this.lastBackoffNanos > this.shortTermLatencyNanos) {
+                this.limit = Math.max(MIN_LIMIT, this.limit * BACKOFF);
+                this.lastBackoffNanos = now;
+            }
+        } else if (this.inFlight + 1 >= this.limit / 2) {
+            // Only grow while the limit is actually being used, otherwise a quiet period would inflate it unchecked.
+            this.limit = Math.min(this.options.maxLimit(), this.limit + 1.0 / this.limit);
+        }
+    }
+
+    private void reject(HttpExchange exchange, Outcome outcome) throws IOException {
+        (outcome == Outcome.QUEUE_FULL ? this.rejectedQueueFull : this.rejectedQueueTimeout).increment();
+
+        try (exchange) {
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(this.retryAfterSeconds()));
+            exchange.sendResponseHeaders(outcome == Outcome.QUEUE_FULL ? 429 : 503, -1);
+        }
+    }
+
+    // Roughly how long until a request arriving now would be admitted: the queue drains `limit` requests per typical
+    // request latency.
+    private long retryAfterSeconds() {
+        var drainNanos = (this.queued / Math.max(1.0, this.limit) + 1) * this.shortTermLatencyNanos;
+
+        return Math.clamp((long) Math.ceil(drainNanos / TimeUnit.SECONDS.toNanos(1)), 1, MAX_RETRY_AFTER_SECONDS);
+    }
+
+    // Exports every controller's limit, queue and rejections, labelled by endpoint.
+    static void register(Metrics metrics, AdmissionController... controllers) {
+        metrics.register("http_admission_limit", "Current concurrency limit, by endpoint.", Metrics.Type.GAUGE, samples -> {
+            for (var controller : controllers) {
+                samples.add(Metrics.labels("endpoint", controller.endpoint), (int) controller.limit);
+            }
+        });
+        metrics.register("http_admission_in_flight", "Requests being handled, by endpoint.", Metrics.Type.GAUGE, samples -> {
+            for (var controller : controllers) {
+                samples.add(Metrics.labels("endpoint", controller.endpoint), controller.inFlight);
+            }
+        });
+        metrics.register("http_admission_queued", "Requests waiting to be admitted, by endpoint.", Metrics.Type.GAUGE, samples -> {
+            for (var controller : controllers) {
+                samples.add(Metrics.labels("endpoint", controller.endpoint), controller.queued);
+            }
+        });
+        metrics.register("http_admission_admitted_total", "Requests admitted, by endpoint.", Metrics.Type.COUNTER, samples -> {
+            for (var controller : controllers) {
+                samples.add(Metrics.labels("endpoint", controller.endpoint), controller.admitted.sum());
+            }
+        });
+        metrics.register("http_admission_rejected_total", "Requests turned away, by endpoint and reason.", Metrics.Type.COUNTER, samples -> {
+            for (var controller : controllers) {
+                samples.add(Metrics.labels("endpoint", controller.endpoint, "reason", "queue_full"), controller.rejectedQueueFull.sum());
+                samples.add(Metrics.labels("endpoint", controller.endpoint, "reason", "queue_timeout"), controller.rejectedQueueTimeout.sum());
+            }
+        });
+        metrics.register("http_admission_queue_wait_seconds", "Time requests spent waiting to be admitted or rejected, by endpoint.", Metrics.Type.HISTOGRAM, samples -> {
+            for (var controller : controllers) {
+                samples.histogram(Metrics.labels("endpoint", controller.endpoint), controller.queueWait);
+            }
+        });
+    }
+}
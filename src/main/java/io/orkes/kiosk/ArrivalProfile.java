@@ -0,0 +1,144 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Describes how the offered load (kiosk orders started per second) changes over the course of a load test.
+public sealed interface ArrivalProfile {
+    // The target arrival rate, in orders per second, at the given point in the run.
+    double rateAt(long elapsedNanos);
+
+    // Whether arrivals should be spaced randomly (exponentially distributed gaps) rather than evenly.
+    default boolean poisson() {
+        return false;
+    }
+
+    String describe();
+
+    // The same profile with every rate multiplied by `factor`, e.g. to split it between the workers of a distributed run.
+    ArrivalProfile scaled(double factor);
+
+    record Constant(double rate) implements ArrivalProfile {
+        @Override
+        public double rateAt(long elapsedNanos) {
+            return this.rate;
+        }
+
+        @Override
+        public String describe() {
+            return String.format("%.1f workflows per second", this.rate);
+        }
+
+        @Override
+        public ArrivalProfile scaled(double factor) {
+            return new Constant(this.rate * factor);
+        }
+    }
+
+    // Linearly increases (or decreases) the rate from `from` to `to` over `over`, then holds it at `to`.
+    record Ramp(double from, double to, Duration over) implements ArrivalProfile {
+        @Override
+        public double rateAt(long elapsedNanos) {
+            var progress = Math.min(1.0, (double) elapsedNanos / this.over.toNanos());
+
+            return this.from + (this.to - this.from) * progress;
+        }
+
+        @Override
+        public String describe() {
+            return String.format("a ramp from %.1f to %.1f workflows per second over %d seconds", this.from, this.to, this.over.toSeconds());
+        }
+
+        @Override
+        public ArrivalProfile scaled(double factor) {
+            return new Ramp(this.from * factor, this.to * factor, this.over);
+        }
+    }
+
+    // Starts at `from` and adds `increment` every `interval`.
+    record Step(double from, double increment, Duration interval) implements ArrivalProfile {
+        @Override
+        public double rateAt(long elapsedNanos) {
+            return this.from + this.increment * (elapsedNanos / this.interval.toNanos());
+        }
+
+        @Override
+        public String describe() {
+            return String.format("%.1f workflows per second, increasing by %.1f every %d seconds", this.from, this.increment, this.interval.toSeconds());
+        }
+
+        @Override
+        public ArrivalProfile scaled(double factor) {
+            return new Step(this.from * factor, this.increment * factor, this.interval);
+        }
+    }
+
+    // Arrivals at an average of `rate` per second, with exponentially distributed gaps like independent customers walking
+    // up to a kiosk.
+    record Poisson(double rate) implements ArrivalProfile {
+        @Override
+        public double rateAt(long elapsedNanos) {
+            return this.rate;
+        }
+
+        @Override
+        public boolean poisson() {
+            return true;
+        }
+
+        @Override
+        public String describe() {
+            return String.format("a Poisson process averaging %.1f workflows per second", this.rate);
+        }
+
+        // The sum of independent Poisson processes is a Poisson process, so workers each running a share of the rate
+        // still add up to the requested arrivals.
+        @Override
+        public ArrivalProfile scaled(double factor) {
+            return new Poisson(this.rate * factor);
+        }
+    }
+
+    // For sending a profile to another process, see LoadCoordinator.
+    default ObjectNode toJson(ObjectMapper json) {
+        var node = json.createObjectNode();
+
+        switch (this) {
+            case Constant constant -> node.put("type", "constant").put("rate", constant.rate());
+            case Ramp ramp -> node.put("type", "ramp").put("from", ramp.from()).put("to", ramp.to()).put("overSeconds", ramp.over().toSeconds());
+            case Step step -> node.put("type", "step").put("from", step.from()).put("increment", step.increment()).put("intervalSeconds", step.interval().toSeconds());
+            case Poisson poisson -> node.put("type", "poisson").put("rate", poisson.rate());
+        }
+
+        return node;
+    }
+
+    static ArrivalProfile fromJson(JsonNode node) {
+        return switch (node.get("type").asText()) {
+            case "constant" -> new Constant(node.get("rate").asDouble());
+            case "ramp" -> new Ramp(node.get("from").asDouble(), node.get("to").asDouble(), Duration.ofSeconds(node.get("overSeconds").asLong()));
+            case "step" -> new Step(node.get("from").asDouble(), node.get("increment").asDouble(), Duration.ofSeconds(node.get("intervalSeconds").asLong()));
+            case "poisson" -> new Poisson(node.get("rate").asDouble());
+            default -> throw new IllegalArgumentException(STR."Unknown arrival profile type '\{node.get("type").asText()}'");
+        };
+    }
+
+    static ArrivalProfile parse(String name, int workflowsPerSecond, Optional<Integer> durationInSeconds,
+                                Optional<Integer> rampTo, int stepIncrement, int stepIntervalInSeconds) {
+        return switch (name) {
+            case "constant" -> new Constant(workflowsPerSecond);
+            case "ramp" -> new Ramp(
+                    workflowsPerSecond,
+                    rampTo.orElseThrow(() -> new IllegalArgumentException(STR."\{Constants.Arguments.RAMP_TO} is required for the ramp arrival profile")),
+                    Duration.ofSeconds(durationInSeconds.orElseThrow(() -> new IllegalArgumentException(STR."\{Constants.Arguments.DURATION_IN_SECONDS} is required for the ramp arrival profile")))
+            );
+            case "step" -> new Step(workflowsPerSecond, stepIncrement, Duration.ofSeconds(stepIntervalInSeconds));
+            case "poisson" -> new Poisson(workflowsPerSecond);
+            default -> throw new IllegalArgumentException(STR."Unknown arrival profile '\{name}', expected one of constant, ramp, step or poisson");
+        };
+    }
+}
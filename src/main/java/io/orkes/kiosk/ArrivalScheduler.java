@@ -0,0 +1,89 @@
+package io.orkes.kiosk;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-loop pacing for the load test. Every arrival gets an intended start time on an absolute timeline derived from the
+// run's start, so oversleeping on one arrival is made up on the next instead of accumulating into a lower rate. When the
+// scheduler falls behind (e.g. thousands of arrivals per second with a coarse timer), due arrivals are released
+// back-to-back until it catches up.
+//
+// Not thread-safe; a single thread is expected to drive the schedule.
+public class ArrivalScheduler {
+    // If the rate drops to zero (e.g. a step profile starting at zero), re-check it this often.
+    private static final long IDLE_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final ArrivalProfile profile;
+    private final long startNanos;
+    private final long durationNanos;
+    private final SplittableRandom random = new SplittableRandom();
+
+    private long nextOffsetNanos = 0;
+    private long arrivals = 0;
+    private long maxLagNanos = 0;
+
+    public ArrivalScheduler(ArrivalProfile profile, long startNanos, long durationNanos) {
+        this.profile = profile;
+        this.startNanos = startNanos;
+        this.durationNanos = durationNanos;
+    }
+
+    // Waits until the next arrival is due and returns its intended start time (on the System#nanoTime clock), or -1 once
+    // the run's duration has elapsed.
+    public long awaitNext() throws InterruptedException {
+        while (true) {
+            var offset = this.nextOffsetNanos;
+
+            if (offset >= this.durationNanos) {
+                return -1;
+            }
+
+            var rate = this.profile.rateAt(offset);
+
+            if (rate <= 0) {
+                this.nextOffsetNanos += IDLE_RECHECK_NANOS;
+                continue;
+            }
+
+            var gap = 1_000_000_000.0 / rate;
+
+            if (this.profile.poisson()) {
+                gap *= -Math.log(1.0 - this.random.nextDouble());
+            }
+
+            this.nextOffsetNanos = offset + Math.max(1, Math.round(gap));
+
+            var intended = this.startNanos + offset;
+
+            this.parkUntil(intended);
+
+            this.maxLagNanos = Math.max(this.maxLagNanos, System.nanoTime() - intended);
+            ++this.arrivals;
+
+            return intended;
+        }
+    }
+
+    private void parkUntil(long deadline) throws InterruptedException {
+        long remaining;
+
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    public long arrivals() {
+        return this.arrivals;
+    }
+
+    // The furthest behind its intended time any arrival was released. A large value means the load generator itself
+    // couldn't keep up with the requested rate.
+    public long maxLagNanos() {
+        return this.maxLagNanos;
+    }
+}
@@ -0,0 +1,374 @@
+package io.orkes.kiosk;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+// The one handler shared by every logger. Logging threads only put the record into a bounded ring buffer; a single
+// writer thread formats and writes them to stderr in batches. That keeps formatting, stack trace rendering and the
+// console write off the kiosks' threads, and means no kiosk ever waits on a lock just to log.
+//
+// When the buffer fills up, the overflow policy decides whether records are dropped, sampled or the caller waits for
+// space. Bursts of the same warning or error (e.g. thousands of kiosks failing the same way) are also cut short: after
+// a few, the rest are counted and summarised in a single line every few seconds.
+public class AsyncLogHandler extends Handler {
+    public enum OverflowPolicy {
+        // Records that don't fit are dropped and counted. The load generator never waits on logging.
+        DROP,
+        // Once the buffer is half full, only one in SAMPLE_RATE records is kept, leaving room for a representative mix
+        // instead of whatever arrived first. Records that still don't fit are dropped.
+        SAMPLE,
+        // Callers wait for room. Nothing is lost, but a flood of logging slows the load generator down.
+        BLOCK
+    }
+
+    private static final int SAMPLE_RATE = 16;
+
+    // How many identical warnings or errors are logged in each window before the rest are only counted.
+    private static final int BURST = 5;
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // A multi-producer, single-consumer ring buffer. Each slot's sequence says whether it's ready to be written (equal to
+    // the producer's position) or read (one past it), so producers only contend on claiming a position.
+    private final int mask;
+    private final AtomicReferenceArray<LogRecord> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong sampled = new AtomicLong();
+    private volatile OverflowPolicy policy = OverflowPolicy.DROP;
+
+    private static class Window {
+        final String logger;
+        final Level level;
+        final String message;
+        final AtomicInteger count = new AtomicInteger();
+        final LongAdder suppressed = new LongAdder();
+        volatile long startNanos = System.nanoTime();
+
+        Window(LogRecord record) {
+            this.logger = record.getLoggerName();
+            this.level = record.getLevel();
+            this.message = record.getMessage();
+        }
+    }
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    private final Thread writer;
+    private volatile boolean idle;
+    private volatile boolean closed;
+
+    // Only touched by the writer thread.
+    private final Writer output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.err), StandardCharsets.UTF_8), 64 * 1024);
+    private final StringBuilder line = new StringBuilder(256);
+    private final Map<String, String> paddedNames = new HashMap<>();
+    private int paddedWidth;
+    private long reportedDrops;
+
+    public AsyncLogHandler(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; ++i) {
+            this.sequences.set(i, i);
+        }
+
+        this.writer = Thread.ofPlatform().name("log-writer").daemon().start(this::run);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (this.closed || !this.isLoggable(record) || this.suppress(record)) {
+            return;
+        }
+
+        var accepted = switch (this.policy) {
+            case DROP -> this.offer(record);
+            case SAMPLE -> this.tail.get() - this.head <= this.mask / 2 || this.sampled.incrementAndGet() % SAMPLE_RATE == 0
+                    ? this.offer(record)
+                    : false;
+            case BLOCK -> {
+                while (!this.offer(record)) {
+                    LockSupport.unpark(this.writer);
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                }
+
+                yield true;
+            }
+        };
+
+        if (!accepted) {
+            this.dropped.increment();
+        } else if (this.idle) {
+            LockSupport.unpark(this.writer);
+        }
+    }
+
+    private boolean offer(LogRecord record) {
+        while (true) {
+            var position = this.tail.get();
+            var index = (int) (position & this.mask);
+            var sequence = this.sequences.get(index);
+
+            if (sequence < position) {
+                // The writer hasn't freed this slot yet, so the buffer is full.
+                return false;
+            }
+
+            if (sequence == position && this.tail.compareAndSet(position, position + 1)) {
+                this.slots.set(index, record);
+                this.sequences.set(index, position + 1);
+
+                return true;
+            }
+        }
+    }
+
+    private LogRecord poll() {
+        var position = this.head;
+        var index = (int) (position & this.mask);
+
+        if (this.sequences.get(index) != position + 1) {
+            return null;
+        }
+
+        var record = this.slots.getAndSet(index, null);
+
+        this.sequences.set(index, position + this.mask + 1);
+        this.head = position + 1;
+
+        return record;
+    }
+
+    // Counts, rather than logs, warnings and errors that have already been logged BURST times in the current window.
+    // Records with an exception are the same if they were thrown from the same place, since their messages usually
+    // contain IDs. Failed kiosk orders are all thrown from the same place, so they also have to fail for the same reason.
+    // Anything else has to have the same message.
+    private boolean suppress(LogRecord record) {
+        if (record.getLevel().intValue() < Level.WARNING.intValue()) {
+            return false;
+        }
+
+        var thrown = record.getThrown();
+        String key;
+
+        if (thrown != null) {
+            var stack = thrown.getStackTrace();
+
+            key = STR."\{record.getLoggerName()}|\{thrown.getClass().getName()}|\{stack.length > 0 ? stack[0] : ""}|\{failureReason(thrown)}";
+        } else {
+            key = STR."\{record.getLoggerName()}|\{record.getMessage()}";
+        }
+
+        var window = this.windows.computeIfAbsent(key, _ -> new Window(record));
+
+        if (window.count.incrementAndGet() <= BURST) {
+            return false;
+        }
+
+        window.suppressed.increment();
+
+        return true;
+    }
+
+    private static String failureReason(Throwable thrown) {
+        for (var cause = thrown; cause != null; cause = cause.getCause()) {
+            if (cause instanceof LoadTest.KioskOrderException failure) {
+                return failure.reason.name();
+            }
+        }
+
+        return "";
+    }
+
+    private void run() {
+        var lastSummary = System.nanoTime();
+
+        while (true) {
+            var record = this.poll();
+
+            if (record != null) {
+                this.write(record);
+                continue;
+            }
+
+            var now = System.nanoTime();
+
+            if (now - lastSummary >= TimeUnit.SECONDS.toNanos(1)) {
+                this.summarise(now, false);
+                lastSummary = now;
+            }
+
+            this.reportDrops();
+            this.flushOutput();
+
+            if (this.closed) {
+                this.summarise(now, true);
+                this.reportDrops();
+                this.flushOutput();
+                return;
+            }
+
+            this.idle = true;
+
+            // A record may have arrived between the last poll and setting the flag, in which case its producer didn't
+            // unpark this thread.
+            if (this.sequences.get((int) (this.head & this.mask)) != this.head + 1) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+
+            this.idle = false;
+        }
+    }
+
+    private void summarise(long now, boolean all) {
+        for (var entry : this.windows.entrySet()) {
+            var window = entry.getValue();
+
+            if (!all && now - window.startNanos < WINDOW_NANOS) {
+                continue;
+            }
+
+            var suppressed = window.suppressed.sumThenReset();
+
+            if (suppressed > 0) {
+                var summary = new LogRecord(window.level, STR."Suppressed \{suppressed} more like: \{window.message}");
+
+                summary.setLoggerName(window.logger);
+
+                this.write(summary);
+            }
+
+            window.startNanos = now;
+
+            if (window.count.getAndSet(0) == 0) {
+                this.windows.remove(entry.getKey(), window);
+            }
+        }
+    }
+
+    private void reportDrops() {
+        var dropped = this.dropped.sum();
+
+        if (dropped > this.reportedDrops) {
+            var record = new LogRecord(Level.WARNING, STR."Dropped \{dropped - this.reportedDrops} log records because the log buffer was full (overflow policy \{this.policy}).");
+
+            record.setLoggerName(AsyncLogHandler.class.getSimpleName());
+
+            this.write(record);
+            this.reportedDrops = dropped;
+        }
+    }
+
+    private void write(LogRecord record) {
+        var line = this.line;
+
+        line.setLength(0);
+        this.format(record, line);
+
+        try {
+            this.output.append(line);
+        } catch (IOException e) {
+            this.reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    // Only called on the writer thread (or by a benchmark that owns the handler).
+    void format(LogRecord record, StringBuilder line) {
+        line.append(record.getInstant().truncatedTo(ChronoUnit.MILLIS))
+                .append(" [").append(record.getLevel()).append("] ")
+                .append(this.padded(record.getLoggerName()))
+                .append(" - ")
+                .append(record.getMessage());
+
+        var thrown = record.getThrown();
+
+        if (thrown != null) {
+            var trace = new StringWriter();
+
+            thrown.printStackTrace(new PrintWriter(trace));
+
+            for (var frame : trace.toString().split("\n")) {
+                line.append("\n\t").append(frame);
+            }
+        }
+
+        line.append('\n');
+    }
+
+    // Logger names are right-aligned to the longest one seen so far, so the messages line up.
+    private String padded(String name) {
+        var width = Logging.maxLoggerNameLength();
+
+        if (width != this.paddedWidth) {
+            this.paddedNames.clear();
+            this.paddedWidth = width;
+        }
+
+        return this.paddedNames.computeIfAbsent(name, _ -> " ".repeat(Math.max(0, width - name.length())) + name);
+    }
+
+    private void flushOutput() {
+        try {
+            this.output.flush();
+        } catch (IOException e) {
+            this.reportError(null, e, ErrorManager.FLUSH_FAILURE);
+        }
+    }
+
+    // Records are written as soon as the writer gets to them; there's nothing to flush from the caller's side.
+    @Override
+    public void flush() {
+    }
+
+    // Writes whatever is still buffered, waiting up to a couple of seconds.
+    @Override
+    public void close() {
+        this.closed = true;
+
+        LockSupport.unpark(this.writer);
+
+        try {
+            this.writer.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
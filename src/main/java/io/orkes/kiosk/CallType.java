@@ -0,0 +1,22 @@
+package io.orkes.kiosk;
+
+// The kinds of calls made to the Conductor server, used to attribute retries and failures.
+public enum CallType {
+    TOKEN(true),
+    PUBLISH(true),
+    EXECUTE(false),
+    SIGNAL(false),
+    // Looking up a workflow's status, see PollingTransport.
+    POLL(true),
+    SEARCH(true),
+    TERMINATE(true);
+
+    // Whether the call can safely be repeated if it's unclear whether the server processed it, e.g. when the connection
+    // drops after the request was sent. Starting or signalling a workflow twice would corrupt an order, so those calls are
+    // only retried when the server definitely didn't act on them.
+    final boolean idempotent;
+
+    CallType(boolean idempotent) {
+        this.idempotent = idempotent;
+    }
+}
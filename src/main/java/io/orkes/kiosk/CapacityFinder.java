@@ -0,0 +1,237 @@
+package io.orkes.kiosk;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Finds the highest rate of kiosk orders the Conductor cluster sustains within its SLOs, instead of guessing a
+// -workflows-per-second, running it and reading the logs. Started with -find-capacity.
+//
+// Each step offers a constant rate for a while and checks the p99 latency of the execute and signal calls (measured from
+// their intended start, so a backed up client counts against the cluster too) and the share of calls that failed. The
+// search doubles the rate from -workflows-per-second until a step breaks an SLO, then bisects between the last rate that
+// passed and the first that failed. The result is confirmed by a longer run at that rate, stepping down if it doesn't
+// hold up.
+//
+// Orders take several think times to complete, so every step only counts calls due to start after the first few think
+// times, once the number of orders in flight has levelled out, and before the step ends. Steps don't overlap: each drains
+// its orders before the next begins (whatever -end-policy says), and the calls they make while draining still count, so
+// a failing rate can't spill over into a lower one and the slowest calls of a saturated step aren't left out.
+public class CapacityFinder {
+    public record Options(
+            // A step fails if either the execute or the signal calls' p99 latency is above this...
+            Duration p99,
+            // ...or if more than this fraction of calls failed.
+            double errorRate,
+            Duration stepDuration,
+            double maxRate,
+            // The search stops once the gap between passing and failing rates is within this fraction of the rate.
+            double precision,
+            Duration confirmDuration
+    ) {
+        public static Options defaults() {
+            return new Options(Duration.ofMillis(500), 0.01, Duration.ofSeconds(60), 10_000, 0.05, Duration.ofMinutes(5));
+        }
+    }
+
+    // How often a confirmation run that doesn't hold up steps down and tries again.
+    private static final int CONFIRM_ATTEMPTS = 3;
+
+    // The calls due to start within one step's measurement window, however late they finish, see LoadTest#measure.
+    static final class Window {
+        private final long fromNanos;
+        private final long toNanos;
+        private final PhaseLatencies latencies = new PhaseLatencies();
+
+        Window(long fromNanos, long toNanos) {
+            this.fromNanos = fromNanos;
+            this.toNanos = toNanos;
+        }
+
+        void record(PhaseLatencies.Phase phase, int status, long intendedStartNanos, long endNanos) {
+            if (intendedStartNanos >= this.fromNanos && intendedStartNanos < this.toNanos) {
+                this.latencies.record(phase, status, intendedStartNanos, endNanos);
+            }
+        }
+    }
+
+    private record Step(double rate, long executeP99Micros, long signalP99Micros, long calls, double errorRate, String violation) {
+        boolean passed() {
+            return this.violation == null;
+        }
+
+        String describe() {
+            return String.format("%8.1f/s  execute p99=%.1f ms  signal p99=%.1f ms  errors=%.2f%% of %d calls  %s",
+                    this.rate, this.executeP99Micros / 1000.0, this.signalP99Micros / 1000.0, this.errorRate * 100, this.calls,
+                    this.passed() ? "PASS" : STR."FAIL (\{this.violation})");
+        }
+    }
+
+    private final Logger log = Logging.getLogger(CapacityFinder.class);
+
+    private final LoadTest loadTest;
+    private final Options options;
+    private final double startRate;
+    private final long settleNanos;
+
+    private final List<Step> steps = new ArrayList<>();
+    private long nextSequence;
+
+    // Exported while the search runs.
+    private volatile double offeredRate;
+    private volatile double sustainableRate;
+
+    CapacityFinder(LoadTest loadTest, Options options, double startRate, Duration settleTime) {
+        // By the time the longest orders have had time to finish, the number of orders in flight has levelled out.
+        this.settleNanos = settleTime.toNanos();
+
+        if (options.stepDuration().toNanos() <= this.settleNanos || options.confirmDuration().toNanos() <= this.settleNanos) {
+            throw new IllegalArgumentException(STR."Capacity steps must be longer than \{TimeUnit.NANOSECONDS.toSeconds(this.settleNanos)} seconds, the time orders take to settle");
+        }
+
+        if (startRate <= 0 || startRate > options.maxRate()) {
+            throw new IllegalArgumentException("The starting rate of a capacity search must be positive and at most its maximum rate");
+        }
+
+        this.loadTest = loadTest;
+        this.options = options;
+        this.startRate = startRate;
+    }
+
+    void register(Metrics metrics) {
+        metrics.register("kiosk_capacity_offered_rate", "Rate of kiosk orders offered by the current step of the capacity search.", Metrics.Type.GAUGE,
+                samples -> samples.add(this.offeredRate));
+        metrics.register("kiosk_capacity_sustainable_rate", "Highest rate of kiosk orders found to meet the SLOs so far.", Metrics.Type.GAUGE,
+                samples -> samples.add(this.sustainableRate));
+    }
+
+    // Runs the search, returning the highest sustainable rate found (0 if even the starting rate breaks the SLOs).
+    double run() throws InterruptedException {
+        this.log.info(String.format("Searching for capacity from %.1f workflows per second (SLOs: p99 <= %d ms, errors <= %.2f%%, %d second steps).",
+                this.startRate, this.options.p99().toMillis(), this.options.errorRate() * 100, this.options.stepDuration().toSeconds()));
+
+        // Until a step fails, the upper bound is unknown.
+        var passing = 0.0;
+        var failing = Double.POSITIVE_INFINITY;
+
+        for (var rate = this.startRate; failing == Double.POSITIVE_INFINITY; rate = Math.min(rate * 2, this.options.maxRate())) {
+            if (this.step(rate, this.options.stepDuration()).passed()) {
+                passing = rate;
+
+                if (rate >= this.options.maxRate()) {
+                    this.log.warning(String.format("Even the maximum rate of %.1f workflows per second meets the SLOs.", rate));
+                    break;
+                }
+            } else {
+                failing = rate;
+            }
+        }
+
+        while (failing != Double.POSITIVE_INFINITY && failing - passing > Math.max(1, passing * this.options.precision())) {
+            var rate = (passing + failing) / 2;
+
+            if (this.step(rate, this.options.stepDuration()).passed()) {
+                passing = rate;
+            } else {
+                failing = rate;
+            }
+        }
+
+        var sustainable = this.confirm(passing);
+
+        this.log.info("Capacity search steps:");
+
+        for (var step : this.steps) {
+            this.log.info(step.describe());
+        }
+
+        if (sustainable > 0) {
+            this.log.info(String.format("Sustainable capacity: %.1f workflows per second.", sustainable));
+        } else {
+            this.log.warning(String.format("No rate from %.1f workflows per second up meets the SLOs; try a lower -workflows-per-second.", this.startRate));
+        }
+
+        return sustainable;
+    }
+
+    // A longer run at the rate the search settled on, stepping down by the search's precision while it doesn't hold up.
+    private double confirm(double rate) throws InterruptedException {
+        for (int attempt = 0; attempt < CONFIRM_ATTEMPTS && rate > 0; ++attempt) {
+            this.log.info(String.format("Confirming %.1f workflows per second over %d seconds...", rate, this.options.confirmDuration().toSeconds()));
+
+            if (this.step(rate, this.options.confirmDuration()).passed()) {
+                return rate;
+            }
+
+            rate *= 1 - this.options.precision();
+        }
+
+        return 0;
+    }
+
+    private Step step(double rate, Duration duration) throws InterruptedException {
+        this.offeredRate = rate;
+
+        var startNanos = System.nanoTime();
+        var window = new Window(startNanos + this.settleNanos, startNanos + duration.toNanos());
+        var arrivals = this.loadTest.arrivals();
+
+        this.loadTest.measure(window);
+
+        try {
+            // Recording stops only once every order of the step has finished.
+            this.loadTest.run(new ArrivalProfile.Constant(rate), startNanos, duration.toNanos(), this.nextSequence, 1, OrderScope.EndPolicy.DRAIN);
+        } finally {
+            this.loadTest.measure(null);
+        }
+
+        this.nextSequence += this.loadTest.arrivals() - arrivals;
+
+        var step = this.evaluate(rate, window.latencies);
+
+        this.steps.add(step);
+        this.log.info(STR."Capacity step: \{step.describe()}");
+
+        if (step.passed()) {
+            this.sustainableRate = Math.max(this.sustainableRate, rate);
+        }
+
+        return step;
+    }
+
+    private Step evaluate(double rate, PhaseLatencies latencies) {
+        var execute = latencies.total(PhaseLatencies.Phase.EXECUTE);
+        var signal = latencies.total(PhaseLatencies.Phase.ADD_ITEM);
+
+        signal.add(latencies.total(PhaseLatencies.Phase.REMOVE_ITEM));
+        signal.add(latencies.total(PhaseLatencies.Phase.CHECKOUT));
+
+        var calls = execute.count() + signal.count();
+        var errors = 0L;
+
+        for (var phase : PhaseLatencies.Phase.values()) {
+            errors += latencies.count(phase, status -> status < 200 || status >= 300);
+        }
+
+        var errorRate = calls == 0 ? 0 : (double) errors / calls;
+        var executeP99 = execute.valueAtPercentile(99);
+        var signalP99 = signal.valueAtPercentile(99);
+        var p99 = this.options.p99().toNanos() / 1000;
+
+        String violation = null;
+
+        if (calls == 0) {
+            violation = "no calls completed";
+        } else if (errorRate > this.options.errorRate()) {
+            violation = "error rate";
+        } else if (executeP99 > p99) {
+            violation = "execute p99";
+        } else if (signalP99 > p99) {
+            violation = "signal p99";
+        }
+
+        return new Step(rate, executeP99, signalP99, calls, errorRate, violation);
+    }
+}
@@ -0,0 +1,147 @@
+package io.orkes.kiosk;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+// Sheds load when the Conductor server is failing. Once at least `minimumCalls` calls have been made within a `window`
+// and `failureRateThreshold` of them failed, the breaker opens and calls fail immediately for `openDuration`. After that
+// a handful of probe calls are let through; if they succeed the breaker closes again, otherwise it stays open.
+public class CircuitBreaker {
+    public record Options(double failureRateThreshold, int minimumCalls, Duration window, Duration openDuration) {
+        public static Options defaults() {
+            return new Options(0.5, 100, Duration.ofSeconds(10), Duration.ofSeconds(5));
+        }
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        OpenException() {
+            super("Circuit breaker is open, the Conductor server is failing");
+        }
+    }
+
+    private static final int HALF_OPEN_PROBES = 5;
+
+    private final Logger log = Logging.getLogger(CircuitBreaker.class);
+
+    private final Options options;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger probes = new AtomicInteger();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timesOpened = new LongAdder();
+
+    private volatile long windowStartNanos = System.nanoTime();
+    private volatile long openedAtNanos;
+
+    public CircuitBreaker(Options options) {
+        this.options = options;
+    }
+
+    // Whether a call may be made right now. Every permitted call must be followed by #onSuccess or #onFailure.
+    public boolean tryAcquire() {
+        var state = this.state.get();
+
+        if (state == State.OPEN) {
+            if (System.nanoTime() - this.openedAtNanos < this.options.openDuration().toNanos()
+                    || !this.state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                this.rejected.increment();
+                return false;
+            }
+
+            this.probes.set(0);
+            state = State.HALF_OPEN;
+        }
+
+        if (state == State.HALF_OPEN && this.probes.getAndIncrement() >= HALF_OPEN_PROBES) {
+            this.rejected.increment();
+            return false;
+        }
+
+        return true;
+    }
+
+    public void onSuccess() {
+        if (this.state.get() == State.HALF_OPEN && this.state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            this.resetWindow(System.nanoTime());
+            this.log.info("Circuit breaker closed, the Conductor server is responding again.");
+            return;
+        }
+
+        this.record(false);
+    }
+
+    public void onFailure() {
+        if (this.state.get() == State.HALF_OPEN) {
+            this.open();
+            return;
+        }
+
+        this.record(true);
+    }
+
+    private void record(boolean failed) {
+        var now = System.nanoTime();
+
+        if (now - this.windowStartNanos > this.options.window().toNanos()) {
+            this.resetWindow(now);
+        }
+
+        this.calls.increment();
+
+        if (!failed) {
+            return;
+        }
+
+        this.failures.increment();
+
+        var calls = this.calls.sum();
+
+        if (calls >= this.options.minimumCalls() && this.failures.sum() >= calls * this.options.failureRateThreshold()) {
+            this.open();
+        }
+    }
+
+    private void open() {
+        var previous = this.state.getAndSet(State.OPEN);
+
+        this.openedAtNanos = System.nanoTime();
+
+        if (previous == State.CLOSED) {
+            this.timesOpened.increment();
+            this.log.warning(STR."Circuit breaker opened, shedding calls for \{this.options.openDuration().toMillis()} ms.");
+        }
+    }
+
+    // Not atomic with concurrent recording, which only matters for a handful of calls at the window boundary.
+    private void resetWindow(long now) {
+        this.windowStartNanos = now;
+        this.calls.reset();
+        this.failures.reset();
+    }
+
+    public State state() {
+        return this.state.get();
+    }
+
+    public long rejected() {
+        return this.rejected.sum();
+    }
+
+    public long timesOpened() {
+        return this.timesOpened.sum();
+    }
+}
@@ -0,0 +1,282 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Terminates running executions of the kiosk workflows. Useful for cleaning up after a cancelled load test, and will also
+// clean up any workflows that are stuck in the RUNNING state due to throttling.
+//
+// Cleanup is pipelined: while the terminations for one page of search results are in flight, the next page is already
+// being fetched. Workflows shift between pages as they're terminated, so a single pass can skip some; passes are
+// repeated from the first page until one turns up nothing new. IDs are remembered across pages and passes so that a
+// workflow is never terminated twice.
+public class CleanupEngine {
+    public record Result(long terminated, long failed, Duration elapsed) {}
+
+    private static final int PAGE_SIZE = 100;
+
+    // If a bulk terminate takes longer than this, the batch is retried as individual deletes and the bulk batch size is
+    // halved. Once it drops below the minimum, bulk terminate is abandoned for the rest of the run.
+    private static final Duration BULK_TIMEOUT = Duration.ofSeconds(10);
+    private static final int MIN_BULK_SIZE = 10;
+
+    private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(2);
+
+    private final Logger log = Logging.getLogger(CleanupEngine.class);
+    private final ObjectMapper json = new ObjectMapper();
+
+    private final KioskApplication application;
+    private final int concurrency;
+    private final Semaphore permits;
+
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger bulkSize = new AtomicInteger(PAGE_SIZE);
+    private final AtomicLong terminated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile long remaining;
+    private long startNanos;
+    private long lastProgressNanos;
+
+    public CleanupEngine(KioskApplication application, int concurrency) {
+        this.application = application;
+        this.concurrency = concurrency;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    public Result run() throws InterruptedException {
+        this.startNanos = System.nanoTime();
+        this.lastProgressNanos = this.startNanos;
+
+        boolean progressed;
+
+        do {
+            var before = this.terminated.get();
+
+            // Stop once a pass finds nothing new, or nothing it found could be terminated.
+            progressed = this.pass() && this.terminated.get() > before;
+        } while (progressed);
+
+        var result = new Result(this.terminated.get(), this.failed.get(), Duration.ofNanos(System.nanoTime() - this.startNanos));
+
+        if (result.terminated() > 0 || result.failed() > 0) {
+            this.log.info(String.format("Cleaned up %d workflows (%d failed) in %.1f seconds, %.0f per second.",
+                    result.terminated(), result.failed(), result.elapsed().toMillis() / 1000.0,
+                    result.terminated() * 1000.0 / Math.max(1, result.elapsed().toMillis())));
+        }
+
+        return result;
+    }
+
+    // Walks every page of running workflows once, returning whether any previously unseen workflows were found.
+    private boolean pass() throws InterruptedException {
+        var foundNew = false;
+        var start = 0;
+        var page = this.search(start);
+
+        while (true) {
+            var ids = page.join();
+
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            start += PAGE_SIZE;
+
+            // Prefetch the next page while this one is being terminated.
+            page = this.search(start);
+
+            var fresh = new ArrayList<String>(ids.size());
+
+            for (var id : ids) {
+                if (this.seen.add(id)) {
+                    fresh.add(id);
+                }
+            }
+
+            if (!fresh.isEmpty()) {
+                foundNew = true;
+                this.terminate(fresh);
+            }
+
+            this.reportProgress();
+        }
+
+        // Wait for every outstanding termination before deciding whether another pass is needed.
+        this.permits.acquire(this.concurrency);
+        this.permits.release(this.concurrency);
+
+        return foundNew;
+    }
+
+    private CompletableFuture<List<String>> search(int start) {
+        var request = this.application.newRequestBuilder()
+                .header("Content-Type", "application/json")
+                .GET()
+                .uri(URI.create(
+                        // String Templates are a preview feature. See https://openjdk.org/jeps/459
+                        STR."\{this.application.endpoint}/api/workflow/search?start=\{start}&size=\{PAGE_SIZE}&freeText=%2A&query=status%20%3D%20RUNNING&skipCache=true"))
+                .build();
+
+        return this.application.http.sendAsync(CallType.SEARCH, request, HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+            // An error body has no results either, which would otherwise read as nothing left to clean up.
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(STR."Searching for running workflows failed: \{response.statusCode()}");
+            }
+
+            try {
+                var body = this.json.readTree(response.body());
+                var ids = new ArrayList<String>(PAGE_SIZE);
+
+                this.remaining = body.path("totalHits").asLong();
+
+                for (JsonNode result : body.path("results")) {
+                    ids.add(result.get("workflowId").asText());
+                }
+
+                return ids;
+            } catch (IOException e) {
+                throw new IllegalStateException(STR."Unexpected search response: \{response.statusCode()}", e);
+            }
+        });
+    }
+
+    private void terminate(List<String> ids) throws InterruptedException {
+        var bulkSize = this.bulkSize.get();
+
+        if (bulkSize >= MIN_BULK_SIZE) {
+            for (int i = 0; i < ids.size(); i += bulkSize) {
+                var batch = ids.subList(i, Math.min(ids.size(), i + bulkSize));
+
+                this.permits.acquire();
+                this.application.executor.submit(() -> {
+                    try {
+                        this.terminateBulk(batch);
+                    } finally {
+                        this.permits.release();
+                    }
+                });
+            }
+        } else {
+            for (var id : ids) {
+                this.permits.acquire();
+                this.application.executor.submit(() -> {
+                    try {
+                        this.terminateOne(id);
+                    } finally {
+                        this.permits.release();
+                    }
+                });
+            }
+        }
+    }
+
+    private void terminateBulk(List<String> ids) {
+        try {
+            var request = this.application.newRequestBuilder()
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(this.json.writeValueAsBytes(ids)))
+                    .timeout(BULK_TIMEOUT)
+                    .uri(URI.create(
+                            // String Templates are a preview feature. See https://openjdk.org/jeps/459
+                            STR."\{this.application.endpoint}/api/workflow/bulk/terminate?reason=cleanup"))
+                    .build();
+
+            var response = this.application.http.send(CallType.TERMINATE, request, HttpResponse.BodyHandlers.ofByteArray());
+
+            if (response.statusCode() == 200) {
+                // A map of workflow ID to error message.
+                var errors = this.json.readTree(response.body()).path("bulkErrorResults");
+
+                // Allow a later pass to try again, as for an individual delete.
+                for (var failedIds = errors.fieldNames(); failedIds.hasNext(); ) {
+                    this.seen.remove(failedIds.next());
+                }
+
+                this.failed.addAndGet(errors.size());
+                this.terminated.addAndGet(ids.size() - errors.size());
+
+                return;
+            }
+
+            this.log.warning(STR."Bulk terminate returned \{response.statusCode()}, terminating individually.");
+        } catch (HttpTimeoutException e) {
+            var size = this.bulkSize.updateAndGet(current -> current / 2);
+
+            this.log.warning(size >= MIN_BULK_SIZE
+                    ? STR."Bulk terminate timed out, reducing batch size to \{size}."
+                    : "Bulk terminate timed out, falling back to individual deletes.");
+        } catch (IOException e) {
+            this.log.log(Level.WARNING, "Bulk terminate failed, terminating individually.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        // Already holding a permit for the whole batch, so the individual deletes are sent one after another.
+        for (var id : ids) {
+            this.terminateOne(id);
+        }
+    }
+
+    private void terminateOne(String workflowId) {
+        var request = this.application.newRequestBuilder()
+                .header("Content-Type", "application/json")
+                .DELETE()
+                .uri(URI.create(
+                        // String Templates are a preview feature. See https://openjdk.org/jeps/459
+                        STR."\{this.application.endpoint}/api/workflow/\{workflowId}"))
+                .build();
+
+        try {
+            var response = this.application.http.send(CallType.TERMINATE, request, HttpResponse.BodyHandlers.discarding());
+
+            if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                this.terminated.incrementAndGet();
+                return;
+            }
+
+            this.log.warning(STR."Failed to terminate workflow \{workflowId}: \{response.statusCode()}");
+        } catch (IOException e) {
+            this.log.log(Level.WARNING, STR."Failed to terminate workflow \{workflowId}", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Allow a later pass to try again.
+        this.seen.remove(workflowId);
+        this.failed.incrementAndGet();
+    }
+
+    private void reportProgress() {
+        var now = System.nanoTime();
+
+        if (now - this.lastProgressNanos < PROGRESS_INTERVAL.toNanos()) {
+            return;
+        }
+
+        this.lastProgressNanos = now;
+
+        var terminated = this.terminated.get();
+
+        this.log.info(String.format("Cleanup in progress: %d terminated, %d failed, ~%d still running, %.0f per second.",
+                terminated, this.failed.get(), this.remaining, terminated * 1e9 / (now - this.startNanos)));
+    }
+}
@@ -10,10 +10,71 @@ public class Constants {
     public static class Arguments {
         public static final String AUTH = "-auth";
         public static final String CLEANUP = "-cleanup";
+        public static final String CLEANUP_CONCURRENCY = "-cleanup-concurrency";
         public static final String LOAD_TEST = "-load-test";
         public static final String WORKFLOWS_PER_SECOND = "-workflows-per-second";
         public static final String DURATION_IN_SECONDS = "-duration";
         public static final String API_TEST_URI = "-uri";
+        public static final String ASSETS_DIRECTORY = "-assets-dir";
+        public static final String ARRIVAL_PROFILE = "-arrival-profile";
+        public static final String RAMP_TO = "-ramp-to";
+        public static final String STEP_INCREMENT = "-step-increment";
+        public static final String STEP_INTERVAL_IN_SECONDS = "-step-interval";
+        public static final String SIMULATOR = "-simulator";
+        public static final String END_POLICY = "-end-policy";
+        public static final String SCENARIOS = "-scenarios";
+        public static final String TIME_COMPRESSION = "-time-compression";
+
+        public static final String TRANSPORT = "-transport";
+        public static final String CONSISTENCY = "-consistency";
+        public static final String POLL_INTERVAL_IN_MILLIS = "-poll-interval";
+        public static final String POLL_CONCURRENCY = "-poll-concurrency";
+        public static final String CALLBACK_URI = "-callback-uri";
+        public static final String PORT = "-port";
+
+        public static final String COORDINATOR = "-coordinator";
+        public static final String WORKER = "-worker";
+
+        public static final String FIND_CAPACITY = "-find-capacity";
+        public static final String SLO_P99_IN_MILLIS = "-slo-p99";
+        public static final String SLO_ERROR_RATE = "-slo-error-rate";
+        public static final String CAPACITY_STEP_IN_SECONDS = "-capacity-step";
+        public static final String CAPACITY_MAX_RATE = "-capacity-max-rate";
+        public static final String CAPACITY_PRECISION = "-capacity-precision";
+        public static final String CAPACITY_CONFIRM_IN_SECONDS = "-capacity-confirm";
+
+        public static final String JOURNAL = "-journal";
+        public static final String REPORT = "-report";
+        public static final String REPORT_INTERVAL_IN_SECONDS = "-report-interval";
+
+        public static final String HTTP_CLIENTS = "-http-clients";
+        public static final String HTTP_VERSION = "-http-version";
+        public static final String MAX_STREAMS_PER_CONNECTION = "-max-streams-per-connection";
+
+        public static final String MAX_ATTEMPTS = "-max-attempts";
+        public static final String RETRY_BASE_DELAY_IN_MILLIS = "-retry-base-delay";
+        public static final String RETRY_MAX_DELAY_IN_MILLIS = "-retry-max-delay";
+        public static final String RETRY_BUDGET = "-retry-budget";
+        public static final String CIRCUIT_BREAKER_THRESHOLD = "-circuit-breaker-threshold";
+        public static final String CIRCUIT_BREAKER_OPEN_IN_MILLIS = "-circuit-breaker-open";
+
+        public static final String ADMISSION_LIMIT = "-admission-limit";
+        public static final String ADMISSION_MAX_LIMIT = "-admission-max-limit";
+        public static final String ADMISSION_QUEUE = "-admission-queue";
+        public static final String ADMISSION_QUEUE_TIMEOUT_IN_MILLIS = "-admission-queue-timeout";
+        public static final String ADMISSION_ADAPTIVE = "-admission-adaptive";
+
+        public static final String LOG_OVERFLOW = "-log-overflow";
+
+        public static final String MOCK_CONDUCTOR = "-mock-conductor";
+        public static final String MOCK_PORT = "-mock-port";
+        public static final String MOCK_LATENCY = "-mock-latency";
+        public static final String MOCK_EXECUTE_LATENCY = "-mock-execute-latency";
+        public static final String MOCK_SIGNAL_LATENCY = "-mock-signal-latency";
+        public static final String MOCK_ERROR_RATE = "-mock-error-rate";
+        public static final String MOCK_ERROR_STATUS = "-mock-error-status";
+        public static final String MOCK_GOAWAY_RATE = "-mock-goaway-rate";
+        public static final String MOCK_TOKEN_TTL_IN_SECONDS = "-mock-token-ttl";
 
         public static final String DEFAULT_API_TEST_METHOD = "POST";
         public static final String DEFAULT_API_TEST_URI = "https://orkes-api-tester.orkesconductor.com/api";
@@ -0,0 +1,84 @@
+package io.orkes.kiosk;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts the tasks run by an executor. The virtual thread per task executor doesn't report anything about itself, and
+// with every request, response and kiosk running on it, how many tasks it's juggling is the first thing to look at when
+// the load generator falls behind.
+public class CountingExecutorService extends AbstractExecutorService {
+    private final ExecutorService delegate;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+
+    public CountingExecutorService(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        this.submitted.increment();
+
+        try {
+            this.delegate.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    this.completed.increment();
+                }
+            });
+        } catch (RuntimeException e) {
+            this.completed.increment();
+            throw e;
+        }
+    }
+
+    public long submitted() {
+        return this.submitted.sum();
+    }
+
+    public long completed() {
+        return this.completed.sum();
+    }
+
+    // Tasks submitted but not yet finished, whether running or waiting (e.g. a virtual thread parked on I/O).
+    public long active() {
+        return Math.max(0, this.submitted() - this.completed());
+    }
+
+    public void register(Metrics metrics) {
+        metrics.register("executor_tasks_submitted_total", "Tasks submitted to the application executor.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.submitted()));
+        metrics.register("executor_tasks_active", "Tasks submitted to the application executor that haven't finished.", Metrics.Type.GAUGE,
+                samples -> samples.add(this.active()));
+    }
+
+    @Override
+    public void shutdown() {
+        this.delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return this.delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,274 @@
+package io.orkes.kiosk;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+// A fixed number of HttpClient instances that requests are spread across.
+//
+// With HTTP/2 each client multiplexes all of its requests over a single connection per host, so the shard count is
+// effectively the connection count, and `maxStreamsPerConnection` caps how many requests share one. With HTTP/1.1 every
+// in-flight request needs its own connection and the cap limits connections per shard instead. Either way a request
+// holds its place until its response body has been read to the end, failed or been closed, since a body handed out as
+// an InputStream keeps its stream open long after the headers arrived.
+//
+// When a shard's connection is sent a GOAWAY, only that shard is retired: it's swapped for a fresh client, allowed to
+// finish whatever it already had in flight, and the request that was refused is immediately re-sent on the replacement.
+public class HttpClientPool {
+    public record Options(int shards, HttpClient.Version version, int maxStreamsPerConnection) {
+        public static Options defaults() {
+            return new Options(1, HttpClient.Version.HTTP_1_1, 0);
+        }
+    }
+
+    // A GOAWAY only refuses streams the server never started processing, so the request can be moved to a fresh
+    // connection without involving the retry budget. Anything beyond a couple of moves is left to the retry policy.
+    private static final int MAX_MIGRATIONS = 2;
+
+    private final Logger log = Logging.getLogger(HttpClientPool.class);
+
+    private final Options options;
+    private final ExecutorService executor;
+    private final AtomicReferenceArray<Shard> shards;
+    private final LongAdder retired = new LongAdder();
+    private final LongAdder migrated = new LongAdder();
+
+    private class Shard {
+        final HttpClient client;
+        final Semaphore streams;
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        Shard() {
+            this.client = HttpClient.newBuilder()
+                    .version(HttpClientPool.this.options.version())
+                    .executor(HttpClientPool.this.executor)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+
+            var max = HttpClientPool.this.options.maxStreamsPerConnection();
+
+            this.streams = max > 0 ? new Semaphore(max) : null;
+        }
+
+        void release() {
+            this.inFlight.decrementAndGet();
+
+            if (this.streams != null) {
+                this.streams.release();
+            }
+        }
+    }
+
+    // One request's place on a shard, given back exactly once: when the response body is done with, or when the request
+    // fails before there is one.
+    private static final class Lease {
+        final Shard shard;
+        final AtomicBoolean released = new AtomicBoolean();
+
+        Lease(Shard shard) {
+            this.shard = shard;
+        }
+
+        void release() {
+            if (this.released.compareAndSet(false, true)) {
+                this.shard.release();
+            }
+        }
+    }
+
+    // Passes the body through to the caller's subscriber, releasing the lease once the body is complete, failed or
+    // cancelled (which is what closing an InputStream body early does).
+    private record ReleasingSubscriber<T>(HttpResponse.BodySubscriber<T> delegate, Lease lease) implements HttpResponse.BodySubscriber<T> {
+        @Override
+        public CompletionStage<T> getBody() {
+            return this.delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.delegate.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    ReleasingSubscriber.this.lease.release();
+                    subscription.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            this.delegate.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.lease.release();
+            this.delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            this.lease.release();
+            this.delegate.onComplete();
+        }
+    }
+
+    private static <T> HttpResponse.BodyHandler<T> releasing(HttpResponse.BodyHandler<T> handler, Lease lease) {
+        return responseInfo -> new ReleasingSubscriber<>(handler.apply(responseInfo), lease);
+    }
+
+    public HttpClientPool(Options options, ExecutorService executor) {
+        this.options = options;
+        this.executor = executor;
+        this.shards = new AtomicReferenceArray<>(Math.max(1, options.shards()));
+
+        for (int i = 0; i < this.shards.length(); ++i) {
+            this.shards.set(i, new Shard());
+        }
+    }
+
+    // Picks the less loaded of two random shards, which spreads load almost as well as scanning every shard without the
+    // contention.
+    private int choose() {
+        var count = this.shards.length();
+
+        if (count == 1) {
+            return 0;
+        }
+
+        var random = ThreadLocalRandom.current();
+        var a = random.nextInt(count);
+        var b = random.nextInt(count);
+
+        return this.shards.get(a).inFlight.get() <= this.shards.get(b).inFlight.get() ? a : b;
+    }
+
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        for (int migrations = 0; ; ++migrations) {
+            var index = this.choose();
+            var shard = this.shards.get(index);
+
+            if (shard.streams != null) {
+                shard.streams.acquire();
+            }
+
+            shard.inFlight.incrementAndGet();
+
+            var lease = new Lease(shard);
+
+            try {
+                return shard.client.send(request, releasing(handler, lease));
+            } catch (IOException e) {
+                lease.release();
+
+                if (!HttpUtils.isCausedByGoAway(e) || migrations >= MAX_MIGRATIONS) {
+                    throw e;
+                }
+
+                this.retire(index, shard);
+            } catch (InterruptedException | RuntimeException e) {
+                lease.release();
+                throw e;
+            }
+        }
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return this.sendAsync(request, handler, 0);
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler, int migrations) {
+        var index = this.choose();
+        var shard = this.shards.get(index);
+
+        CompletableFuture<Void> acquired;
+
+        if (shard.streams == null || shard.streams.tryAcquire()) {
+            acquired = CompletableFuture.completedFuture(null);
+        } else {
+            // The shard is at its stream limit; wait for a slot on a virtual thread rather than blocking the caller.
+            acquired = CompletableFuture.runAsync(shard.streams::acquireUninterruptibly, this.executor);
+        }
+
+        var lease = new Lease(shard);
+
+        return acquired.thenCompose(_ -> {
+            shard.inFlight.incrementAndGet();
+
+            return shard.client.sendAsync(request, releasing(handler, lease));
+        }).handle((response, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+
+            lease.release();
+
+            var cause = error instanceof CompletionException ? error.getCause() : error;
+
+            if (!HttpUtils.isCausedByGoAway(cause) || migrations >= MAX_MIGRATIONS) {
+                return CompletableFuture.<HttpResponse<T>>failedFuture(cause);
+            }
+
+            this.retire(index, shard);
+
+            return this.sendAsync(request, handler, migrations + 1);
+        }).thenCompose(Function.identity());
+    }
+
+    private void retire(int index, Shard shard) {
+        this.migrated.increment();
+
+        // Several requests on the same connection will see the same GOAWAY; only the first one replaces the shard.
+        if (!this.shards.compareAndSet(index, shard, new Shard())) {
+            return;
+        }
+
+        this.retired.increment();
+        this.log.info(STR."Connection for client shard \{index} was sent a GOAWAY, replacing it.");
+
+        // Requests already in flight on the old client are allowed to complete.
+        shard.client.shutdown();
+    }
+
+    public void register(Metrics metrics) {
+        metrics.register("http_client_in_flight", "Requests in flight across all client shards.", Metrics.Type.GAUGE, samples -> {
+            var inFlight = 0L;
+
+            for (int i = 0; i < this.shards.length(); ++i) {
+                inFlight += this.shards.get(i).inFlight.get();
+            }
+
+            samples.add(inFlight);
+        });
+        metrics.register("http_client_shards_retired_total", "Client shards replaced after their connection was sent a GOAWAY.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.retired.sum()));
+        metrics.register("http_client_requests_migrated_total", "Requests moved to a fresh shard after a GOAWAY.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.migrated.sum()));
+    }
+
+    public void log(Logger log) {
+        log.info(STR."HTTP client pool: \{this.shards.length()} \{this.options.version()} shards, \{this.retired.sum()} retired after GOAWAY, \{this.migrated.sum()} requests migrated.");
+    }
+}
@@ -1,13 +1,18 @@
 package io.orkes.kiosk;
 
 import java.io.IOException;
+import java.util.Objects;
 
 public class HttpUtils {
+    // Whether any IOException in the cause chain reports a GOAWAY. Many IOExceptions have no message at all, e.g. the
+    // ConnectException of a refused connection.
     public static boolean isCausedByGoAway(Throwable throwable) {
-        while (throwable != null && throwable.getCause() != null && !(throwable instanceof IOException)) {
-            throwable = throwable.getCause();
+        for (var cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException && Objects.requireNonNullElse(cause.getMessage(), "").contains("GOAWAY")) {
+                return true;
+            }
         }
 
-        return throwable instanceof IOException ioException && ioException.getMessage().contains("GOAWAY");
+        return false;
     }
 }
@@ -0,0 +1,205 @@
+package io.orkes.kiosk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Analyses a run journal (see RunJournal) after the fact: -report=<journal> reads it instead of running anything.
+//
+// The journal is streamed once, so its size doesn't matter: everything kept is either per interval (throughput over
+// time) or a fixed-size histogram (latencies), never per step. That makes it practical to look into a soak test with
+// hours of steps, e.g. to find the interval in which latency started to climb.
+public class JournalReport {
+    private static final double[] PERCENTILES = { 50, 99 };
+
+    private final Logger log = Logging.getLogger(JournalReport.class);
+
+    private final long intervalNanos;
+
+    // Measured from the intended start, as in the live report, and from the time the request was actually sent. The
+    // difference between the two is the load generator falling behind.
+    private final PhaseLatencies latencies = new PhaseLatencies();
+    private final Map<PhaseLatencies.Phase, LatencyHistogram> serviceTimes = new EnumMap<>(PhaseLatencies.Phase.class);
+    private final Map<PhaseLatencies.Phase, LatencyHistogram> sendDelays = new EnumMap<>(PhaseLatencies.Phase.class);
+
+    private final long[][] failures = new long[LoadTest.FailureReason.values().length][PhaseLatencies.Phase.values().length];
+
+    // Per interval, by the time each step ended. Grown as the run goes on.
+    private long[] steps = new long[64];
+    private long[] started = new long[64];
+    private long[] completed = new long[64];
+    private long[] failed = new long[64];
+    private long[] latencySumMicros = new long[64];
+    private int intervals;
+
+    private long records;
+    private long firstStartNanos = Long.MAX_VALUE;
+    private long lastEndNanos = Long.MIN_VALUE;
+
+    JournalReport(Duration interval) {
+        this.intervalNanos = interval.toNanos();
+
+        for (var phase : PhaseLatencies.Phase.values()) {
+            this.serviceTimes.put(phase, new LatencyHistogram());
+            this.sendDelays.put(phase, new LatencyHistogram());
+        }
+    }
+
+    static void run(Path path, Duration interval) throws IOException {
+        var report = new JournalReport(interval);
+
+        try (var reader = new RunJournal.Reader(path)) {
+            while (reader.next()) {
+                report.add(reader);
+            }
+
+            report.log(path, Instant.ofEpochMilli(reader.startEpochMillis()));
+        }
+    }
+
+    private void add(RunJournal.Reader record) {
+        var phase = record.phase();
+        var failure = record.failure();
+        var intendedStart = record.intendedStartNanos();
+        var start = record.startNanos();
+        var end = record.endNanos();
+
+        ++this.records;
+        this.firstStartNanos = Math.min(this.firstStartNanos, intendedStart);
+        this.lastEndNanos = Math.max(this.lastEndNanos, end);
+
+        this.latencies.record(phase, record.status(), intendedStart, end);
+        this.serviceTimes.get(phase).recordNanos(end - start);
+        this.sendDelays.get(phase).recordNanos(start - intendedStart);
+
+        if (failure != null) {
+            ++this.failures[failure.ordinal()][phase.ordinal()];
+        }
+
+        var interval = this.interval(end);
+
+        ++this.steps[interval];
+        this.latencySumMicros[interval] += TimeUnit.NANOSECONDS.toMicros(end - intendedStart);
+
+        if (phase == PhaseLatencies.Phase.EXECUTE) {
+            ++this.started[interval];
+        }
+
+        if (failure != null) {
+            ++this.failed[interval];
+        } else if (phase == PhaseLatencies.Phase.CHECKOUT) {
+            ++this.completed[interval];
+        }
+    }
+
+    private int interval(long endNanos) {
+        var interval = (int) Math.max(0, endNanos / this.intervalNanos);
+
+        if (interval >= this.steps.length) {
+            var length = Math.max(interval + 1, this.steps.length * 2);
+
+            this.steps = Arrays.copyOf(this.steps, length);
+            this.started = Arrays.copyOf(this.started, length);
+            this.completed = Arrays.copyOf(this.completed, length);
+            this.failed = Arrays.copyOf(this.failed, length);
+            this.latencySumMicros = Arrays.copyOf(this.latencySumMicros, length);
+        }
+
+        this.intervals = Math.max(this.intervals, interval + 1);
+
+        return interval;
+    }
+
+    private void log(Path path, Instant start) {
+        if (this.records == 0) {
+            this.log.info(STR."\{path} has no steps recorded.");
+            return;
+        }
+
+        var seconds = (this.lastEndNanos - this.firstStartNanos) / 1e9;
+
+        this.log.info(String.format("%s: %d steps of a run started at %s, spanning %.1f seconds.", path, this.records, start, seconds));
+
+        this.log.info(String.format("Throughput per %d second interval (steps and orders per second; latency measured from intended start, in milliseconds):",
+                TimeUnit.NANOSECONDS.toSeconds(this.intervalNanos)));
+
+        var perSecond = 1e9 / this.intervalNanos;
+
+        for (int i = 0; i < this.intervals; ++i) {
+            this.log.info(String.format("+%6ds steps=%-9.1f started=%-8.1f completed=%-8.1f failed=%-8.1f mean=%.1f",
+                    TimeUnit.NANOSECONDS.toSeconds(i * this.intervalNanos),
+                    this.steps[i] * perSecond,
+                    this.started[i] * perSecond,
+                    this.completed[i] * perSecond,
+                    this.failed[i] * perSecond,
+                    this.steps[i] == 0 ? 0 : this.latencySumMicros[i] / 1000.0 / this.steps[i]));
+        }
+
+        this.latencies.log(this.log);
+
+        this.log.info("Service time (from the request actually being sent) and send delay (behind the intended start), in milliseconds:");
+
+        for (var phase : PhaseLatencies.Phase.values()) {
+            var serviceTime = this.serviceTimes.get(phase);
+
+            if (serviceTime.count() == 0) {
+                continue;
+            }
+
+            var sendDelay = this.sendDelays.get(phase);
+            var line = new StringBuilder(128);
+
+            line.append(String.format("%-11s", phase));
+
+            for (var percentile : PERCENTILES) {
+                line.append(String.format(" service-p%.0f=%.1f", percentile, serviceTime.valueAtPercentile(percentile) / 1000.0));
+            }
+
+            for (var percentile : PERCENTILES) {
+                line.append(String.format(" delay-p%.0f=%.1f", percentile, sendDelay.valueAtPercentile(percentile) / 1000.0));
+            }
+
+            line.append(String.format(" delay-max=%.1f", sendDelay.maxMicros() / 1000.0));
+
+            this.log.info(line.toString());
+        }
+
+        var anyFailures = false;
+
+        for (var reason : LoadTest.FailureReason.values()) {
+            var byPhase = this.failures[reason.ordinal()];
+            var total = Arrays.stream(byPhase).sum();
+
+            if (total == 0) {
+                continue;
+            }
+
+            if (!anyFailures) {
+                this.log.info("Failed orders, by reason and the step that failed:");
+                anyFailures = true;
+            }
+
+            var line = new StringBuilder(128);
+
+            line.append(String.format("%-24s total=%-8d", reason, total));
+
+            for (var phase : PhaseLatencies.Phase.values()) {
+                if (byPhase[phase.ordinal()] > 0) {
+                    line.append(String.format(" %s=%d", phase, byPhase[phase.ordinal()]));
+                }
+            }
+
+            this.log.info(line.toString());
+        }
+
+        if (!anyFailures) {
+            this.log.info("No failed orders.");
+        }
+    }
+}
@@ -1,50 +1,75 @@
 package io.orkes.kiosk;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public class KioskApplication {
-    private record WorkflowSpecifier(String name, int version) {}
+    private record WorkflowSpecifier(String name, int version, Duration timeout) {}
 
-    private final ObjectMapper json = new ObjectMapper();
+    final ObjectMapper json = new ObjectMapper();
     private final Logger log = Logging.getLogger(KioskApplication.class);
 
     final ProgramArguments arguments;
 
-    final ExecutorService executor;
-    final HttpClient client;
+    final CountingExecutorService executor;
+    final ResilientHttpClient http;
+
+    // Served at /metrics for Prometheus.
+    final Metrics metrics = new Metrics();
+
+    // Only present when running against the in-process mock rather than a real Conductor server.
+    private final MockConductorServer mockConductor;
 
     // URL of the Conductor server, e.g. `https://developer.orkescloud.com`.
-    private final String endpoint = System.getenv("CONDUCTOR_SERVER_URL");
+    final String endpoint;
 
-    // Token used to authenticate with the Conductor server, derived from the access key credentials.
-    private final String token;
+    // Keeps the token used to authenticate with the Conductor server fresh. Null when running without -auth.
+    final TokenManager tokens;
+
+    // Only present when this process coordinates a distributed load test, see LoadCoordinator.
+    final LoadCoordinator coordinator;
 
     private final Map<String, WorkflowSpecifier> workflows = new HashMap<>();
 
-    // In a real-world application you would want to refresh the token periodically.
+    private final StartupTimings startup = new StartupTimings();
+
+    final RequestTemplates templates;
+
+    // How the load test's orders reach Conductor, see WorkflowTransport.
+    final WorkflowTransport transport;
+
+    // The kiosk_order workflow's timeoutSeconds: past it, Conductor times the workflow out, so the load test gives up on
+    // the order too. Zero if it has none.
+    final Duration orderTimeout;
+
+    // Called by the TokenManager whenever the token needs to be (re)fetched.
     private String getToken() throws IOException, InterruptedException {
         var accessKeyId = System.getenv("CONDUCTOR_ACCESS_KEY_ID");
         var accessKeySecret = System.getenv("CONDUCTOR_ACCESS_KEY_SECRET");
 
+        // The mock server accepts any credentials.
+        if (this.mockConductor != null && accessKeyId == null && System.getenv("CONDUCTOR_SERVER_TOKEN") == null) {
+            accessKeyId = "mock";
+            accessKeySecret = "mock";
+        }
+
         if (accessKeyId != null && accessKeySecret != null) {
             var request = HttpRequest.newBuilder()
                 .header("Content-Type", "application/json")
@@ -57,7 +82,7 @@ public class KioskApplication {
                 .uri(URI.create(this.endpoint + "/api/token"))
                 .build();
 
-            var response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            var response = this.http.send(CallType.TOKEN, request, HttpResponse.BodyHandlers.ofByteArray());
             var body = this.json.readTree(response.body());
             var token = body.get("token").asText();
 
@@ -77,236 +102,293 @@ public class KioskApplication {
         return token;
     }
 
+    // Publishes the bundled definitions concurrently, see WorkflowDefinitions.
     private void publishWorkflows(String... names) throws IOException, InterruptedException {
+        var publishing = new ArrayList<Future<WorkflowSpecifier>>(names.length);
+
         for (var name : names) {
-            var workflow = this.json.readTree(KioskApplication.class.getResourceAsStream(STR."/workflows/\{name}.json5"));
-            var workflowName = workflow.get("name").asText();
-            var workflowVersion = workflow.get("version").asInt();
-            var body = this.json.writeValueAsString(workflow);
-
-            var request = this.newRequestBuilder()
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(body))
-                    // A real-world application would probably want to check for an existing workflow and validate that it's
-                    // functionally identical to the current workflow. This example just overwrites the existing workflow.
-                    .uri(URI.create(STR."\{this.endpoint}/api/metadata/workflow?overwrite=true&newVersion=false"))
-                    .build();
-
-            var response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == 200) {
-                this.log.info(STR."Workflow '\{workflowName}' published successfully.");
-            } else {
-                throw new IllegalStateException(STR."Failed to publish workflow: \{response.body()}");
+            publishing.add(this.executor.submit(() -> this.publishWorkflow(name)));
+        }
+
+        for (int i = 0; i < names.length; ++i) {
+            try {
+                this.workflows.put(names[i], publishing.get(i).get());
+            } catch (ExecutionException e) {
+                switch (e.getCause()) {
+                    case IOException cause -> throw cause;
+                    case RuntimeException cause -> throw cause;
+                    default -> throw new RuntimeException(e.getCause());
+                }
             }
+        }
+    }
+
+    // Publishes a definition unless Conductor already has it as it is, so that scaling out doesn't rewrite every
+    // definition in the metadata store once per pod.
+    private WorkflowSpecifier publishWorkflow(String name) throws IOException, InterruptedException {
+        var phaseStart = System.nanoTime();
+        var definition = WorkflowDefinitions.load(this.json, name);
+        var specifier = new WorkflowSpecifier(definition.name(), definition.version(), definition.timeout());
+
+        var current = this.http.send(CallType.PUBLISH, this.newRequestBuilder()
+                .GET()
+                .uri(URI.create(STR."\{this.endpoint}/api/metadata/workflow/\{definition.name()}?version=\{definition.version()}"))
+                .build(), HttpResponse.BodyHandlers.ofByteArray());
+
+        if (current.statusCode() == 200 && definition.matches(this.json.readTree(current.body()))) {
+            this.log.info(STR."Workflow '\{definition.name()}' version \{definition.version()} is unchanged, not publishing it again.");
+            this.startup.record(STR."publish_\{name}", phaseStart);
 
-            this.workflows.put(name, new WorkflowSpecifier(workflowName, workflowVersion));
+            return specifier;
         }
+
+        var request = this.newRequestBuilder()
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(definition.body()))
+                .uri(URI.create(STR."\{this.endpoint}/api/metadata/workflow?overwrite=true&newVersion=false"))
+                .build();
+
+        var response = this.http.send(CallType.PUBLISH, request, HttpResponse.BodyHandlers.ofString());
+
+        if (response.statusCode() == 200) {
+            this.log.info(STR."Workflow '\{definition.name()}' published successfully.");
+        } else {
+            throw new IllegalStateException(STR."Failed to publish workflow: \{response.body()}");
+        }
+
+        this.startup.record(STR."publish_\{name}", phaseStart);
+
+        return specifier;
     }
 
-    private KioskApplication(ProgramArguments args) throws IOException, InterruptedException {
+    KioskApplication(ProgramArguments args) throws IOException, InterruptedException {
         this.arguments = args;
 
-        this.executor = Executors.newVirtualThreadPerTaskExecutor();
-        this.client = HttpClient.newBuilder()
-                // TODO: Investigate where in the networking chain the GOAWAY issue arises from.
-                .version(HttpClient.Version.HTTP_1_1)
-                .executor(this.executor)
-                .connectTimeout(Duration.ofSeconds(5))
-                .build();
+        var phaseStart = System.nanoTime();
+
+        this.executor = new CountingExecutorService(Executors.newVirtualThreadPerTaskExecutor());
+        // HTTP/1.1 is the default because of GOAWAYs seen somewhere in the networking chain with HTTP/2. The pool replaces
+        // connections that receive one, so HTTP/2 can be enabled with -http-version=2.
+        var clients = new HttpClientPool(this.arguments.httpClients(), this.executor);
+
+        this.tokens = this.arguments.auth() ? new TokenManager(this::getToken, this.executor) : null;
+        this.http = new ResilientHttpClient(clients, this.executor, this.arguments.retryPolicy(), new CircuitBreaker(this.arguments.circuitBreaker()), this.tokens);
+
+        phaseStart = this.startup.record("http_clients", phaseStart);
+
+        if (this.arguments.mockConductor().isPresent()) {
+            this.mockConductor = new MockConductorServer(this.arguments.mockConductor().get());
+            this.endpoint = this.mockConductor.start();
+
+            phaseStart = this.startup.record("mock_conductor", phaseStart);
+        } else {
+            this.mockConductor = null;
+            this.endpoint = System.getenv("CONDUCTOR_SERVER_URL");
+        }
 
         if (this.endpoint == null) {
             throw new IllegalArgumentException("CONDUCTOR_SERVER_URL environment variable is required");
         }
 
-        this.token = this.arguments.auth() ? getToken() : null;
+        if (this.tokens != null) {
+            this.tokens.start();
+            this.tokens.register(this.metrics);
+
+            phaseStart = this.startup.record("token", phaseStart);
+        }
+
+        this.executor.register(this.metrics);
+        this.http.register(this.metrics);
+        this.startup.register(this.metrics);
+
+        if (this.arguments.coordinator().isPresent()) {
+            var durationNanos = this.arguments.durationInSeconds().map(TimeUnit.SECONDS::toNanos).orElse(Long.MAX_VALUE);
+
+            this.coordinator = new LoadCoordinator(this.json, this.arguments.coordinator().get(), this.arguments.arrivalProfile(), durationNanos);
+            this.coordinator.register(this.metrics);
+        } else {
+            this.coordinator = null;
+        }
 
         this.publishWorkflows(
                 Constants.Workflows.KIOSK_ORDER,
                 Constants.Workflows.INITIALIZE_CART,
                 Constants.Workflows.KIOSK_HANDLER
         );
+
+        phaseStart = this.startup.record("publish_workflows", phaseStart);
+
+        var order = this.workflows.get(Constants.Workflows.KIOSK_ORDER);
+
+        var transport = this.arguments.transport();
+        var callbackUri = transport.kind() != WorkflowTransport.Kind.CALLBACK ? null
+                : transport.callbackUri().orElse(URI.create(STR."http://127.0.0.1:\{this.arguments.port()}\{PollingTransport.CALLBACK_PATH}"));
+
+        this.templates = new RequestTemplates(this.json, this.endpoint, order.name(), order.version(),
+                this.arguments.apiTestMethod(), this.arguments.apiTestUri(), transport.consistency(), callbackUri);
+        this.transport = WorkflowTransport.create(this, transport);
+        this.transport.register(this.metrics);
+        this.orderTimeout = order.timeout();
+
+        this.startup.record("request_templates", phaseStart);
     }
 
-    private HttpRequest.Builder newRequestBuilder() {
+    HttpRequest.Builder newRequestBuilder() {
         var builder = HttpRequest.newBuilder();
 
-        if (this.arguments.auth()) {
-            builder.header("X-Authorization", this.token);
+        if (this.tokens != null) {
+            builder.header(TokenManager.HEADER, this.tokens.current());
         }
 
         return builder;
     }
 
-    HttpResponse<InputStream> executeWorkflow(Map<String, ?> input) throws JsonProcessingException {
-        var workflow = this.workflows.get(Constants.Workflows.KIOSK_ORDER);
-
-        var workflowInput = new LinkedHashMap<>(input.size() + 1);
-
-        workflowInput.put("method", this.arguments.apiTestMethod());
-        workflowInput.put("uri", this.arguments.apiTestUri());
+    // Starts a kiosk order for the load test, tagged with its sequence number. The load test goes through the transport,
+    // which uses this for -transport=sync.
+    //
+    // Callers that only look at the status and headers should pass HttpResponse.BodyHandlers#discarding; anything else
+    // must consume the body, see ResponseBodies.
+    <T> CompletableFuture<HttpResponse<T>> executeWorkflowAsync(long sequence, HttpResponse.BodyHandler<T> handler) {
+        return this.executeWorkflowAsync(this.templates.executeBody(sequence), handler);
+    }
 
-        workflowInput.putAll(input);
+    <T> HttpResponse<T> executeWorkflow(HttpResponse.BodyHandler<T> handler) {
+        return this.executeWorkflowAsync(this.templates.executeBody(), handler).join();
+    }
 
+    private <T> CompletableFuture<HttpResponse<T>> executeWorkflowAsync(byte[] body, HttpResponse.BodyHandler<T> handler) {
         var request = this.newRequestBuilder()
                 .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(this.json.writeValueAsString(Map.of("input", workflowInput))))
-                .uri(URI.create(
-                        // String Templates are a preview feature. See https://openjdk.org/jeps/459
-                        STR."\{this.endpoint}/api/workflow/execute/\{workflow.name}/\{workflow.version}?waitForSeconds=3&returnStrategy=BLOCKING_TASK_INPUT&consistency=SYNCHRONOUS"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .uri(this.templates.executeUri())
                 .build();
 
-        while (true) {
-            try {
-                return this.client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()).join();
-            } catch (Throwable e) {
-                if (!HttpUtils.isCausedByGoAway(e)) {
-                    throw e;
-                }
-            }
-        }
-    }
-
-    // Terminates existing running executions of the KioskWorkflow. Useful for cleaning up after a cancelled load test.
-    // Will also clean up any workflows that are stuck in the RUNNING state due to throttling.
-    private void cleanup() throws IOException, InterruptedException {
-        long terminated;
-
-        do {
-            terminated = 0;
-
-            var searchRequest = this.newRequestBuilder()
-                    .header("Content-Type", "application/json")
-                    .GET()
-                    .uri(URI.create(
-                            // String Templates are a preview feature. See https://openjdk.org/jeps/459
-                            STR."\{this.endpoint}/api/workflow/search?start=0&size=100&freeText=%2A&query=status%20%3D%20RUNNING&skipCache=true"))
-                    .build();
-
-            var response = this.client.send(searchRequest, HttpResponse.BodyHandlers.ofString());
-            var result = ((ArrayNode)this.json.readTree(response.body()).get("results"));
-
-            if (!result.isEmpty()) {
-                for (int i = 0; i < result.size(); ++i) {
-                    var workflowId = result.get(i).get("workflowId").asText();
-
-                    var terminateRequest = this.newRequestBuilder()
-                            .header("Content-Type", "application/json")
-                            .DELETE()
-                            .uri(URI.create(
-                                    // I tried using the bulk terminate endpoint, but it just timed out.
-                                    // String Templates are a preview feature. See https://openjdk.org/jeps/459
-                                    STR."\{this.endpoint}/api/workflow/\{workflowId}"))
-                            .build();
-
-                    this.client.send(terminateRequest, HttpResponse.BodyHandlers.ofString());
-
-                    ++terminated;
-                }
-
-                this.log.info(STR."Cleaned up \{terminated} workflows.");
-            }
-        } while (terminated > 0);
+        return this.http.sendAsync(CallType.EXECUTE, request, handler);
     }
 
     private void start() throws IOException, InterruptedException {
+        var phaseStart = System.nanoTime();
+
         if (this.arguments.cleanup()) {
-            this.cleanup();
+            new CleanupEngine(this, this.arguments.cleanupConcurrency()).run();
+
+            phaseStart = this.startup.record("cleanup", phaseStart);
         }
 
-        var server = HttpServer.create(new InetSocketAddress(3000), 0);
+        var server = HttpServer.create(new InetSocketAddress(this.arguments.port()), 0);
 
         server.setExecutor(executor);
 
-        server.createContext("/start-workflow/", exchange -> {
-            var response = this.executeWorkflow(Collections.emptyMap());
+        // Bounds the execute calls a burst of kiosks starting orders can cause, see AdmissionController.
+        var startWorkflow = new AdmissionController("start_workflow", this.arguments.admission(), exchange -> {
+            var response = this.executeWorkflow(HttpResponse.BodyHandlers.ofInputStream());
 
             try {
-                var workflow = this.json.readTree(response.body());
+                if (response.statusCode() != 200) {
+                    // Let the caller see exactly what Conductor said.
+                    ResponseBodies.relay(response, exchange);
+                    return;
+                }
+
+                var workflowId = ResponseBodies.extractField(response.body(), "workflowId")
+                        .orElseThrow(() -> new IllegalStateException("Conductor response did not contain a workflowId"));
 
                 // String Templates are a preview feature. See https://openjdk.org/jeps/459
                 var body = STR."""
                     {
-                        "workflowId": "\{workflow.get("workflowId").asText()}"
+                        "workflowId": "\{workflowId}"
                     }
-                """;
+                """.getBytes(StandardCharsets.UTF_8);
 
                 exchange.getResponseHeaders().set("Content-Type", "application/json");
 
-                exchange.sendResponseHeaders(200, body.length());
+                exchange.sendResponseHeaders(200, body.length);
 
                 try (var os = exchange.getResponseBody()) {
-                    os.write(body.getBytes());
+                    os.write(body);
                 }
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         });
 
-        // TODO: The UI portion of this demo application is not yet functional, but the frontend will eventually call this.
-//        server.createContext("/resume-workflow/", exchange -> {
-//            var workflow = this.json.readTree(exchange.getRequestBody());
-//
-//            this.resumeWorkflow(workflow.get("workflowId").asText()).thenRun(() -> {
-//                try {
-//                    exchange.sendResponseHeaders(200, -1);
-//                } catch (IOException e) {
-//                    throw new RuntimeException(e);
-//                }
-//            });
-//        });
+        server.createContext("/start-workflow/", startWorkflow);
 
-        // TODO: Make the frontend functional.
-        server.createContext("/", exchange -> {
-            try (var html = KioskApplication.class.getResourceAsStream("/index.html")) {
-                if (html == null) {
-                    throw new IllegalStateException("index.html not found");
-                }
+        AdmissionController.register(this.metrics, startWorkflow);
 
-                var body = html.readAllBytes();
+        // Called by the UI as the customer adds items and checks out. Answered asynchronously, see ResumeWorkflowHandler.
+        var resumeWorkflow = new ResumeWorkflowHandler(this);
 
-                exchange.sendResponseHeaders(200, body.length);
+        server.createContext("/resume-workflow/", resumeWorkflow);
 
-                try (var os = exchange.getResponseBody()) {
-                    os.write(body);
-                }
-            }
-        });
+        resumeWorkflow.register(this.metrics);
+
+        server.createContext("/metrics", this.metrics);
+
+        if (this.transport instanceof PollingTransport polling && polling.callbacks()) {
+            server.createContext(PollingTransport.CALLBACK_PATH, polling);
+        }
+
+        if (this.coordinator != null) {
+            server.createContext(LoadCoordinator.PATH, this.coordinator);
+        }
+
+        // TODO: Make the frontend functional.
+        server.createContext("/", new StaticAssets(this.arguments.assetsDirectory()));
 
         server.start();
 
+        this.startup.record("server", phaseStart);
+        this.startup.log(this.log);
+
         if (this.arguments.performLoadTest()) {
             LoadTest.start(this).thenRun(() -> {
                 server.stop(0);
+                this.stop();
             });
         }
     }
 
-    HttpResponse<InputStream> resumeWorkflow(String workflowId, String action) throws InterruptedException, IOException {
-        var request = this.newRequestBuilder()
-                .header("Content-Type", "application/json")
-                .header("X-Kiosk-Action", action) // This is just for debugging purposes.
-                .POST(HttpRequest.BodyPublishers.ofString(STR."""
-                        {
-                            "action": "\{action}"
-                        }
-                        """))
-                .uri(URI.create(
-                        // String Templates are a preview feature. See https://openjdk.org/jeps/459
-                        STR."\{this.endpoint}/api/tasks/\{workflowId}/COMPLETED/signal/sync?returnStrategy=BLOCKING_TASK_INPUT"))
-                .build();
+    // Stops everything the constructor started, for callers (like the benchmarks) that never start the server.
+    void stop() {
+        this.transport.close();
 
-        var response = this.client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (this.tokens != null) {
+            this.tokens.stop();
+        }
 
-        if (response.statusCode() >= 200 && response.statusCode() < 300) {
-            this.log.config("Workflow resumed successfully.");
+        if (this.mockConductor != null) {
+            this.mockConductor.stop();
         }
 
-        return response;
+        this.executor.shutdown();
+    }
+
+    // For callers signalling the same workflow repeatedly, which can resolve its signal URI once with RequestTemplates.
+    <T> CompletableFuture<HttpResponse<T>> resumeWorkflowAsync(URI signalUri, String action, HttpResponse.BodyHandler<T> handler) {
+        return this.http.sendAsync(CallType.SIGNAL, this.signalRequest(signalUri, action), handler);
+    }
+
+    private HttpRequest signalRequest(URI signalUri, String action) {
+        return this.newRequestBuilder()
+                .header("Content-Type", "application/json")
+                .header("X-Kiosk-Action", action) // This is just for debugging purposes.
+                .POST(HttpRequest.BodyPublishers.ofByteArray(this.templates.signalBody(action)))
+                .uri(signalUri)
+                .build();
     }
 
     public static void main(String[] args) throws IOException, InterruptedException {
         var arguments = ProgramArguments.parse(args);
+
+        Logging.setOverflowPolicy(arguments.logOverflow());
+
+        if (arguments.report().isPresent()) {
+            // Analyses the journal of an earlier run; there's nothing to connect to.
+            JournalReport.run(arguments.report().get(), arguments.reportInterval());
+            return;
+        }
+
         var application = new KioskApplication(arguments);
 
         application.start();
@@ -0,0 +1,82 @@
+package io.orkes.kiosk;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// A random delay, specified on the command line as `<kind>:<parameters>` with all times in milliseconds:
+//
+//   constant:20           always 20 ms
+//   uniform:5:50          evenly spread between 5 and 50 ms
+//   exponential:20        exponentially distributed with a mean of 20 ms
+//   lognormal:20:0.8      log-normally distributed with a median of 20 ms and a shape (sigma) of 0.8, i.e. a long tail
+public sealed interface LatencyDistribution {
+    LatencyDistribution ZERO = new Constant(0);
+
+    long sampleNanos();
+
+    // The average of the samples, e.g. to estimate how long a series of them takes.
+    double meanMillis();
+
+    record Constant(double millis) implements LatencyDistribution {
+        @Override
+        public long sampleNanos() {
+            return toNanos(this.millis);
+        }
+
+        @Override
+        public double meanMillis() {
+            return this.millis;
+        }
+    }
+
+    record Uniform(double minMillis, double maxMillis) implements LatencyDistribution {
+        @Override
+        public long sampleNanos() {
+            return toNanos(this.minMillis + ThreadLocalRandom.current().nextDouble() * (this.maxMillis - this.minMillis));
+        }
+
+        @Override
+        public double meanMillis() {
+            return (this.minMillis + this.maxMillis) / 2;
+        }
+    }
+
+    record Exponential(double meanMillis) implements LatencyDistribution {
+        @Override
+        public long sampleNanos() {
+            return toNanos(-this.meanMillis * Math.log(1.0 - ThreadLocalRandom.current().nextDouble()));
+        }
+    }
+
+    record LogNormal(double medianMillis, double sigma) implements LatencyDistribution {
+        @Override
+        public long sampleNanos() {
+            return toNanos(this.medianMillis * Math.exp(this.sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+
+        @Override
+        public double meanMillis() {
+            return this.medianMillis * Math.exp(this.sigma * this.sigma / 2);
+        }
+    }
+
+    private static long toNanos(double millis) {
+        return Math.max(0, Math.round(millis * TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+
+    static LatencyDistribution parse(String spec) {
+        var parts = spec.split(":");
+
+        try {
+            return switch (parts[0]) {
+                case "constant" -> new Constant(Double.parseDouble(parts[1]));
+                case "uniform" -> new Uniform(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                case "exponential" -> new Exponential(Double.parseDouble(parts[1]));
+                case "lognormal" -> new LogNormal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                default -> throw new IllegalArgumentException(STR."Unknown latency distribution '\{parts[0]}', expected one of constant, uniform, exponential or lognormal");
+            };
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException(STR."Invalid latency distribution '\{spec}'", e);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// Runs one load test across several processes. A single JVM eventually runs out of client-side capacity (CPU,
+// connections, heap for in-flight kiosks), so for more load, start one process with -coordinator=<workers> and that many
+// with -worker=<coordinator URL>, e.g. as pods of a Deployment or as plain processes on one machine.
+//
+// Each worker registers with the coordinator, which holds the registration open until every worker has arrived. It then
+// answers them all with the same start time a few seconds out and their share of the load: the arrival profile divided
+// by the number of workers, and every workers-th sequence number so that no two workers start the same order. The
+// coordinator's own load test arguments are the ones that count; the workers' are ignored.
+//
+// Once its share is done, each worker posts its counters and latency histograms back, and the coordinator merges them
+// into a single report (and its /metrics). Histograms are merged bucket by bucket, so the combined percentiles are exact
+// rather than an average of each worker's percentiles.
+public class LoadCoordinator implements HttpHandler {
+    static final String PATH = "/coordinator/";
+
+    // Long enough for every worker to hear back and get ready, short enough that nobody wonders whether it's working.
+    private static final Duration START_DELAY = Duration.ofSeconds(5);
+
+    // How long after the last arrival the coordinator waits for reports. Every order has to finish first, which takes
+    // at least three think times.
+    private static final Duration REPORT_GRACE = Duration.ofMinutes(5);
+
+    // What a worker is told to do.
+    record Assignment(int worker, int workers, Instant start, long offsetNanos, ArrivalProfile profile, long durationNanos) {
+        ObjectNode toJson(ObjectMapper json) {
+            var node = json.createObjectNode();
+
+            node.put("worker", this.worker);
+            node.put("workers", this.workers);
+            node.put("startEpochMillis", this.start.toEpochMilli());
+            node.put("offsetNanos", this.offsetNanos);
+            node.set("profile", this.profile.toJson(json));
+            node.put("durationNanos", this.durationNanos);
+
+            return node;
+        }
+
+        static Assignment fromJson(JsonNode node) {
+            return new Assignment(
+                    node.get("worker").asInt(),
+                    node.get("workers").asInt(),
+                    Instant.ofEpochMilli(node.get("startEpochMillis").asLong()),
+                    node.get("offsetNanos").asLong(),
+                    ArrivalProfile.fromJson(node.get("profile")),
+                    node.get("durationNanos").asLong()
+            );
+        }
+
+        // The start time on this process's System#nanoTime clock. Wall clocks are assumed to be in sync (e.g. NTP), which
+        // is good to a few milliseconds and plenty for starting a run together.
+        long startNanos() {
+            return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.start.toEpochMilli() - System.currentTimeMillis()) + this.offsetNanos;
+        }
+    }
+
+    private final Logger log = Logging.getLogger(LoadCoordinator.class);
+
+    private final ObjectMapper json;
+    private final int workers;
+    private final ArrivalProfile profile;
+    private final long durationNanos;
+
+    private final AtomicInteger registered = new AtomicInteger();
+    private final CompletableFuture<Instant> start = new CompletableFuture<>();
+
+    private final List<JsonNode> reports = new CopyOnWriteArrayList<>();
+    private final CountDownLatch reported;
+
+    LoadCoordinator(ObjectMapper json, int workers, ArrivalProfile profile, long durationNanos) {
+        if (workers < 1) {
+            throw new IllegalArgumentException(STR."\{Constants.Arguments.COORDINATOR} needs at least one worker");
+        }
+
+        this.json = json;
+        this.workers = workers;
+        this.profile = profile;
+        this.durationNanos = durationNanos;
+        this.reported = new CountDownLatch(workers);
+    }
+
+    void register(Metrics metrics) {
+        metrics.register("kiosk_workers_registered", "Workers registered with this coordinator.", Metrics.Type.GAUGE,
+                samples -> samples.add(Math.min(this.registered.get(), this.workers)));
+        metrics.register("kiosk_workers_reported", "Workers that have reported their results to this coordinator.", Metrics.Type.GAUGE,
+                samples -> samples.add(this.reports.size()));
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            var body = this.json.readTree(exchange.getRequestBody());
+
+            switch (exchange.getRequestURI().getPath().substring(PATH.length())) {
+                case "register" -> this.onRegister(exchange, body);
+                case "report" -> this.onReport(exchange, body);
+                default -> exchange.sendResponseHeaders(404, -1);
+            }
+        }
+    }
+
+    private void onRegister(HttpExchange exchange, JsonNode body) throws IOException {
+        var worker = this.registered.getAndIncrement();
+
+        if (worker >= this.workers) {
+            this.log.warning(STR."Turned away \{body.path("name").asText()}: all \{this.workers} workers have already registered.");
+            exchange.sendResponseHeaders(409, -1);
+            return;
+        }
+
+        this.log.info(STR."Worker \{worker} (\{body.path("name").asText()}) registered, \{worker + 1} of \{this.workers}.");
+
+        if (worker == this.workers - 1) {
+            this.start.complete(Instant.now().plus(START_DELAY));
+        }
+
+        // Held open until the last worker registers. Handlers run on virtual threads, so waiting here is cheap.
+        var assignment = new Assignment(worker, this.workers, this.start.join(), this.offsetNanos(worker),
+                this.profile.scaled(1.0 / this.workers), this.durationNanos);
+        var response = this.json.writeValueAsBytes(assignment.toJson(this.json));
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+
+        try (var os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
+
+    // With evenly spaced arrivals, workers that all started at once would each send an order at the same instant. Shifting
+    // each worker by one gap of the combined rate interleaves them into the same even spacing a single process would give.
+    private long offsetNanos(int worker) {
+        var rate = this.profile.rateAt(0);
+
+        return this.profile.poisson() || rate <= 0 ? 0 : Math.round(worker * 1e9 / rate);
+    }
+
+    private void onReport(HttpExchange exchange, JsonNode body) throws IOException {
+        this.reports.add(body);
+
+        this.log.info(STR."Worker \{body.path("worker").asInt()} reported, \{this.reports.size()} of \{this.workers}.");
+
+        this.reported.countDown();
+
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    // Waits for every worker to register and report, merging their results into `loadTest`.
+    void run(LoadTest loadTest) throws InterruptedException {
+        this.log.info(STR."Waiting for \{this.workers} workers to register at \{PATH}register...");
+
+        var start = this.start.join();
+
+        this.log.info(STR."All workers registered; starting at \{start} with \{this.profile.describe()} split between \{this.workers} workers.");
+
+        if (this.durationNanos == Long.MAX_VALUE) {
+            this.reported.await();
+        } else {
+            var deadline = start.plusNanos(this.durationNanos).plus(REPORT_GRACE);
+
+            if (!this.reported.await(Math.max(0, Duration.between(Instant.now(), deadline).toMillis()), TimeUnit.MILLISECONDS)) {
+                this.log.warning(STR."Only \{this.reports.size()} of \{this.workers} workers reported; the results below are incomplete.");
+            }
+        }
+
+        for (var report : this.reports) {
+            loadTest.add(report);
+        }
+    }
+
+    // The worker's side: registering, then reporting once its share of the load test is done.
+    static class Worker {
+        // The coordinator may well start after its workers, e.g. when pods are scheduled in a different order.
+        private static final Duration CONNECT_RETRY_DELAY = Duration.ofSeconds(2);
+        private static final int CONNECT_ATTEMPTS = 150;
+
+        private final Logger log = Logging.getLogger(LoadCoordinator.class);
+
+        private final ObjectMapper json;
+        private final URI coordinator;
+        private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        Worker(ObjectMapper json, URI coordinator) {
+            this.json = json;
+            this.coordinator = coordinator;
+        }
+
+        // Blocks until every worker has registered and the coordinator hands out the assignments.
+        Assignment register() throws IOException, InterruptedException {
+            var body = this.json.createObjectNode();
+
+            body.put("name", STR."\{InetAddress.getLocalHost().getHostName()}/\{ProcessHandle.current().pid()}");
+
+            this.log.info(STR."Registering with coordinator \{this.coordinator}...");
+
+            var response = this.post("register", body);
+
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(STR."Coordinator rejected registration: \{response.statusCode()}");
+            }
+
+            var assignment = Assignment.fromJson(this.json.readTree(response.body()));
+
+            this.log.info(STR."Registered as worker \{assignment.worker()} of \{assignment.workers()}, starting at \{assignment.start()}.");
+
+            return assignment;
+        }
+
+        void report(ObjectNode results) throws IOException, InterruptedException {
+            var response = this.post("report", results);
+
+            if (response.statusCode() != 204) {
+                throw new IllegalStateException(STR."Coordinator rejected report: \{response.statusCode()}");
+            }
+        }
+
+        private HttpResponse<byte[]> post(String action, ObjectNode body) throws IOException, InterruptedException {
+            var request = HttpRequest.newBuilder(this.coordinator.resolve(PATH + action))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(this.json.writeValueAsString(body), StandardCharsets.UTF_8))
+                    .build();
+
+            for (int attempt = 1; ; ++attempt) {
+                try {
+                    return this.client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                } catch (ConnectException e) {
+                    if (attempt >= CONNECT_ATTEMPTS) {
+                        throw e;
+                    }
+
+                    Thread.sleep(CONNECT_RETRY_DELAY);
+                }
+            }
+        }
+    }
+}
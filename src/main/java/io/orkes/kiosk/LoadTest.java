@@ -1,138 +1,734 @@
 package io.orkes.kiosk;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
 import java.time.Duration;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Function;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class LoadTest {
+    // How a simulated kiosk is run.
+    public enum Simulator {
+        // One virtual thread per kiosk, which sleeps through the think time. The simplest to follow, but every kiosk
+        // keeps its stack alive for the whole order.
+        VIRTUAL_THREADS,
+        // Each kiosk is a small state object, advanced by HTTP response callbacks and woken up after its think time by a
+        // shared timer wheel. Nothing is held for a kiosk between steps except the object itself.
+        STATE_MACHINE
+    }
+
+    // Why a kiosk order failed, exported as the `reason` label of kiosk_orders_failed_total.
+    enum FailureReason {
+        EXECUTE_REJECTED,
+        MISSING_WORKFLOW_ID,
+        NO_YIELD_TASK,
+        SIGNAL_REJECTED,
+        MISSING_WORKFLOW_STATUS,
+        NOT_COMPLETED,
+        CIRCUIT_OPEN,
+        NO_RESPONSE,
+        // Still running when its deadline passed, see OrderScope.
+        TIMED_OUT,
+        // Still running when the run ended with -end-policy=cancel.
+        CANCELLED
+    }
+
+    static class KioskOrderException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final FailureReason reason;
+
+        KioskOrderException(FailureReason reason, String message) {
+            super(message);
+            this.reason = reason;
+        }
+    }
+
+    // The orders of one scenario, counted and measured apart from the others.
+    private static final class ScenarioResults {
+        final LongAdder completed = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final PhaseLatencies latencies = new PhaseLatencies();
+    }
+
     private final Logger log = Logging.getLogger(LoadTest.class);
 
-    private final AtomicLong workflowsStarted = new AtomicLong();
+    private final LongAdder workflowsStarted = new LongAdder();
+    private final LongAdder ordersCompleted = new LongAdder();
+    private final Map<FailureReason, LongAdder> ordersFailed = new EnumMap<>(FailureReason.class);
+
+    private final PhaseLatencies latencies = new PhaseLatencies();
+
+    // How many orders the arrival schedule released, and how far behind it fell at worst. Summed (and maxed) across the
+    // workers of a distributed run.
+    private final LongAdder arrivals = new LongAdder();
+    private final AtomicLong maxLagNanos = new AtomicLong();
 
     private final KioskApplication application;
+    private final Simulator simulator;
+    private final Scenarios scenarios;
 
-    private LoadTest(KioskApplication application) {
+    // By Scenario#index.
+    private final ScenarioResults[] scenarioResults;
+
+    // Only used by the state machine simulator.
+    private final TimerWheel timers;
+
+    // Open while this process runs orders, if -journal is set.
+    private RunJournal journal;
+
+    // Set while CapacityFinder measures a step of its search.
+    private volatile CapacityFinder.Window window;
+
+    // Every order the fixed three items and a checkout, with the given think time.
+    LoadTest(KioskApplication application, Simulator simulator, Duration thinkTime) {
+        this(application, simulator, Scenarios.fixed(thinkTime));
+    }
+
+    LoadTest(KioskApplication application, Simulator simulator, Scenarios scenarios) {
         this.application = application;
+        this.simulator = simulator;
+        this.scenarios = scenarios;
+        this.scenarioResults = new ScenarioResults[scenarios.scenarios().size()];
+        this.timers = simulator == Simulator.STATE_MACHINE ? new TimerWheel(application.executor) : null;
+
+        for (int i = 0; i < this.scenarioResults.length; ++i) {
+            this.scenarioResults[i] = new ScenarioResults();
+        }
+
+        for (var reason : FailureReason.values()) {
+            this.ordersFailed.put(reason, new LongAdder());
+        }
     }
 
-    private CompletableFuture<?> simulateKioskOrder(long sequence) {
-        try {
-            // Start the workflow that yields execution when it reaches the wait task.
-            var response = this.application.executeWorkflow(Map.of(
-                    "sequence", '"' + Long.toString(sequence) + '"'
-            ));
+    PhaseLatencies latencies() {
+        return this.latencies;
+    }
 
-            if (response.statusCode() != 200) {
-                return CompletableFuture.failedFuture(new RuntimeException(STR."Failed to start workflow #\{sequence}: \{response.statusCode()}."));
+    long arrivals() {
+        return this.arrivals.sum();
+    }
+
+    // Also records every step into `window`, until called again with null.
+    void measure(CapacityFinder.Window window) {
+        this.window = window;
+    }
+
+    // Starts one kiosk order with the configured simulator, returning a future that completes when the order does.
+    // Completing it exceptionally from outside (see OrderScope) ends the order: it takes no further steps.
+    CompletableFuture<?> startKioskOrder(long sequence, long intendedStartNanos) {
+        this.workflowsStarted.increment();
+
+        var scenario = this.scenarios.pick();
+
+        CompletableFuture<?> order = switch (this.simulator) {
+            case VIRTUAL_THREADS -> {
+                var future = new CompletableFuture<>();
+
+                var task = this.application.executor.submit(() -> this.simulateKioskOrder(sequence, scenario, intendedStartNanos).whenComplete((_, e) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(null);
+                    }
+                }));
+
+                // Wakes the thread from its think time, which then gives up.
+                future.whenComplete((_, e) -> {
+                    if (e != null && !task.isDone()) {
+                        task.cancel(true);
+                    }
+                });
+
+                yield future;
+            }
+            case STATE_MACHINE -> new KioskOrder(sequence, scenario).start(intendedStartNanos);
+        };
+
+        // Counted exactly once, however the order ends, which keeps kiosk_orders_in_flight exact.
+        order.whenComplete((_, e) -> {
+            var results = this.scenarioResults[scenario.index()];
+
+            if (e == null) {
+                this.ordersCompleted.increment();
+                results.completed.increment();
+            } else {
+                this.ordersFailed.get(reason(e)).increment();
+                results.failed.increment();
             }
+        });
 
-            var workflowId = response.headers().firstValue("workflowId")
-                    .orElseThrow();
+        return order;
+    }
 
-            for (int i = 0; i < 3 && response.statusCode() != 204; ++i) {
-                // Waits for three seconds, simulating the time a human would take to make a decision and click a button.
-                // Thread#sleep plays well with Project Loom's Virtual Threads, so this doesn't actually block a system thread.
-                Thread.sleep(Duration.ofSeconds(3));
+    private static FailureReason reason(Throwable error) {
+        for (var cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof KioskOrderException failure) {
+                return failure.reason;
+            }
 
-                // Advance to the next step in the workflow.
-                response = this.application.resumeWorkflow(workflowId, "AddItem");
+            if (cause instanceof CircuitBreaker.OpenException) {
+                return FailureReason.CIRCUIT_OPEN;
+            }
+        }
+
+        return FailureReason.NO_RESPONSE;
+    }
+
+    private long ordersFailed() {
+        return this.ordersFailed.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    void register(Metrics metrics) {
+        metrics.register("kiosk_orders_started_total", "Simulated kiosk orders started.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.workflowsStarted.sum()));
+        metrics.register("kiosk_orders_completed_total", "Simulated kiosk orders that checked out successfully.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.ordersCompleted.sum()));
+        metrics.register("kiosk_orders_failed_total", "Simulated kiosk orders that failed, by reason.", Metrics.Type.COUNTER, samples -> {
+            for (var entry : this.ordersFailed.entrySet()) {
+                samples.add(Metrics.labels("reason", entry.getKey().name().toLowerCase()), entry.getValue().sum());
+            }
+        });
+        metrics.register("kiosk_orders_in_flight", "Simulated kiosk orders started but not yet finished.", Metrics.Type.GAUGE,
+                samples -> samples.add(this.workflowsStarted.sum() - this.ordersCompleted.sum() - this.ordersFailed()));
+        metrics.register("kiosk_phase_duration_seconds", "Duration of each step of a kiosk order, measured from its intended start time.", Metrics.Type.HISTOGRAM, samples -> {
+            for (var phase : PhaseLatencies.Phase.values()) {
+                samples.histogram(Metrics.labels("phase", phase.name().toLowerCase()), this.latencies.total(phase));
+            }
+        });
+
+        metrics.register("kiosk_scenario_orders_total", "Simulated kiosk orders that finished, by scenario and outcome.", Metrics.Type.COUNTER, samples -> {
+            for (var scenario : this.scenarios.scenarios()) {
+                var results = this.scenarioResults[scenario.index()];
+
+                samples.add(Metrics.labels("scenario", scenario.name(), "outcome", "completed"), results.completed.sum());
+                samples.add(Metrics.labels("scenario", scenario.name(), "outcome", "failed"), results.failed.sum());
             }
+        });
+        metrics.register("kiosk_scenario_phase_duration_seconds", "Duration of each step of a kiosk order by scenario, measured from its intended start time.", Metrics.Type.HISTOGRAM, samples -> {
+            for (var scenario : this.scenarios.scenarios()) {
+                var latencies = this.scenarioResults[scenario.index()].latencies;
 
-            if (response.statusCode() == 204) {
-                return CompletableFuture.failedFuture(new RuntimeException(STR."Workflow \{workflowId} returned before reaching a yield task."));
+                for (var phase : PhaseLatencies.Phase.values()) {
+                    samples.histogram(Metrics.labels("scenario", scenario.name(), "phase", phase.name().toLowerCase()), latencies.total(phase));
+                }
             }
+        });
+
+        if (this.timers != null) {
+            metrics.register("kiosk_think_timers_pending", "Kiosks waiting out their think time on the timer wheel.", Metrics.Type.GAUGE,
+                    samples -> samples.add(this.timers.pending()));
+        }
+    }
+
+    // The counters and histograms of this run, for a worker to report to its coordinator.
+    ObjectNode results(ObjectMapper json) {
+        var node = json.createObjectNode();
 
-            response = this.application.resumeWorkflow(workflowId, "Checkout");
+        node.put("started", this.workflowsStarted.sum());
+        node.put("completed", this.ordersCompleted.sum());
 
-            if (response.statusCode() != 200) {
-                return CompletableFuture.failedFuture(new RuntimeException(STR."Failed to resume workflow \{workflowId}: \{response.statusCode()}"));
+        var failed = node.putObject("failed");
+
+        for (var entry : this.ordersFailed.entrySet()) {
+            failed.put(entry.getKey().name(), entry.getValue().sum());
+        }
+
+        node.put("arrivals", this.arrivals.sum());
+        node.put("maxLagNanos", this.maxLagNanos.get());
+        node.set("latencies", this.latencies.toJson(json));
+
+        var scenarios = node.putObject("scenarios");
+
+        for (var scenario : this.scenarios.scenarios()) {
+            var results = this.scenarioResults[scenario.index()];
+
+            scenarios.putObject(scenario.name())
+                    .put("completed", results.completed.sum())
+                    .put("failed", results.failed.sum())
+                    .set("latencies", results.latencies.toJson(json));
+        }
+
+        return node;
+    }
+
+    // Merges a worker's results (see #results) into this run's.
+    void add(JsonNode results) {
+        this.workflowsStarted.add(results.get("started").asLong());
+        this.ordersCompleted.add(results.get("completed").asLong());
+
+        for (var entry : this.ordersFailed.entrySet()) {
+            entry.getValue().add(results.get("failed").path(entry.getKey().name()).asLong());
+        }
+
+        this.arrivals.add(results.get("arrivals").asLong());
+        this.maxLagNanos.accumulateAndGet(results.get("maxLagNanos").asLong(), Math::max);
+        this.latencies.add(results.get("latencies"));
+
+        // Matched by name; a worker given other scenarios than the coordinator's only counts towards the totals.
+        for (var scenario : this.scenarios.scenarios()) {
+            var node = results.path("scenarios").get(scenario.name());
+
+            if (node != null) {
+                var merged = this.scenarioResults[scenario.index()];
+
+                merged.completed.add(node.get("completed").asLong());
+                merged.failed.add(node.get("failed").asLong());
+                merged.latencies.add(node.get("latencies"));
             }
+        }
+    }
+
+    void stop() {
+        if (this.timers != null) {
+            this.timers.close();
+        }
+    }
+
+    // Why the outcome of a step ends the order, or null if the order carries on. An item that wasn't added or removed for
+    // any other reason than the workflow having finished early isn't a failure in itself; checkout will tell.
+    private static FailureReason failure(PhaseLatencies.Phase phase, WorkflowTransport.Step step) {
+        return switch (phase) {
+            case EXECUTE -> {
+                if (step.statusCode() != 200) {
+                    yield FailureReason.EXECUTE_REJECTED;
+                }
 
-            if (response.headers().firstValue("workflowStatus").isEmpty()) {
-                return CompletableFuture.failedFuture(new RuntimeException(STR."Workflow \{workflowId} did not return a workflowStatus header."));
+                yield step.workflowId() == null ? FailureReason.MISSING_WORKFLOW_ID : null;
             }
+            case ADD_ITEM, REMOVE_ITEM -> step.statusCode() == 204 ? FailureReason.NO_YIELD_TASK : null;
+            case CHECKOUT -> {
+                if (step.statusCode() != 200) {
+                    yield FailureReason.SIGNAL_REJECTED;
+                }
 
-            if (!response.headers().firstValue("workflowStatus").get().equals("COMPLETED")) {
-                return CompletableFuture.failedFuture(new RuntimeException(STR."Workflow \{workflowId} did not complete."));
+                if (step.workflowStatus() == null) {
+                    yield FailureReason.MISSING_WORKFLOW_STATUS;
+                }
+
+                yield step.workflowStatus().equals("COMPLETED") ? null : FailureReason.NOT_COMPLETED;
             }
+        };
+    }
+
+    // `workflowId` is null until the workflow has been started.
+    private static KioskOrderException failed(FailureReason reason, long sequence, String workflowId, WorkflowTransport.Step step) {
+        return new KioskOrderException(reason, switch (reason) {
+            case EXECUTE_REJECTED -> STR."Failed to start workflow #\{sequence}: \{step.statusCode()}.";
+            case MISSING_WORKFLOW_ID -> STR."Workflow #\{sequence} did not return a workflowId header.";
+            case NO_YIELD_TASK -> STR."Workflow \{workflowId} returned before reaching a yield task.";
+            case SIGNAL_REJECTED -> STR."Failed to resume workflow \{workflowId}: \{step.statusCode()}";
+            case MISSING_WORKFLOW_STATUS -> STR."Workflow \{workflowId} did not return a workflowStatus header.";
+            case NOT_COMPLETED -> STR."Workflow \{workflowId} did not complete.";
+            case CIRCUIT_OPEN, NO_RESPONSE -> STR."Workflow #\{sequence} got no response.";
+            case TIMED_OUT -> STR."Workflow #\{sequence} timed out.";
+            case CANCELLED -> STR."Workflow #\{sequence} was cancelled.";
+        });
+    }
+
+    // Records a step that got a response, returning why it ends the order, or null if it doesn't. The latency is
+    // measured from the intended start; the journal also gets the time the request was actually sent.
+    private FailureReason record(long sequence, Scenarios.Scenario scenario, PhaseLatencies.Phase phase, WorkflowTransport.Step step, long intendedStartNanos, long startNanos, long endNanos) {
+        var failure = failure(phase, step);
+
+        this.latencies.record(phase, step.statusCode(), intendedStartNanos, endNanos);
+        this.scenarioResults[scenario.index()].latencies.record(phase, step.statusCode(), intendedStartNanos, endNanos);
+
+        var window = this.window;
+
+        if (window != null) {
+            window.record(phase, step.statusCode(), intendedStartNanos, endNanos);
+        }
+
+        if (this.journal != null) {
+            this.journal.append(sequence, phase, step.statusCode(), intendedStartNanos, startNanos, endNanos, failure);
+        }
+
+        return failure;
+    }
+
+    // Records a step that got no response.
+    private void record(long sequence, Scenarios.Scenario scenario, PhaseLatencies.Phase phase, Throwable error, long intendedStartNanos, long startNanos, long endNanos) {
+        this.latencies.record(phase, PhaseLatencies.NO_RESPONSE, intendedStartNanos, endNanos);
+        this.scenarioResults[scenario.index()].latencies.record(phase, PhaseLatencies.NO_RESPONSE, intendedStartNanos, endNanos);
+
+        var window = this.window;
+
+        if (window != null) {
+            window.record(phase, PhaseLatencies.NO_RESPONSE, intendedStartNanos, endNanos);
+        }
+
+        if (this.journal != null) {
+            this.journal.append(sequence, phase, PhaseLatencies.NO_RESPONSE, intendedStartNanos, startNanos, endNanos, reason(error));
+        }
+    }
+
+    private CompletableFuture<?> simulateKioskOrder(long sequence, Scenarios.Scenario scenario, long intendedStartNanos) {
+        var phase = PhaseLatencies.Phase.EXECUTE;
+        var phaseStart = intendedStartNanos;
+        var sent = System.nanoTime();
 
-            return CompletableFuture.completedFuture(null);
+        try {
+            // Start the workflow that yields execution when it reaches the wait task.
+            var step = this.application.transport.start(sequence).join();
+
+            var phaseEnd = System.nanoTime();
+            var failure = this.record(sequence, scenario, phase, step, phaseStart, sent, phaseEnd);
+
+            if (failure != null) {
+                return CompletableFuture.failedFuture(failed(failure, sequence, null, step));
+            }
+
+            var workflowId = step.workflowId();
+            var taskId = step.taskId();
+
+            for (int steps = 0; ; ++steps) {
+                var action = scenario.next(steps);
+
+                if (action.thinkNanos() > 0) {
+                    // Waits for the scenario's think time, simulating the time a human would take to make a decision and
+                    // click a button. Thread#sleep plays well with Project Loom's Virtual Threads, so this doesn't actually
+                    // block a system thread.
+                    Thread.sleep(Duration.ofNanos(action.thinkNanos()));
+                } else if (Thread.interrupted()) {
+                    // Ended from outside during the last step; there's no think time left to interrupt.
+                    throw new InterruptedException();
+                }
+
+                // The next step was meant to start as soon as the think time elapsed, regardless of when the virtual
+                // thread actually got around to waking up.
+                phase = action.phase();
+                phaseStart = phaseEnd + action.thinkNanos();
+                sent = System.nanoTime();
+
+                // Advance to the next step in the workflow.
+                step = this.application.transport.signal(workflowId, taskId, action.name()).join();
+                phaseEnd = System.nanoTime();
+                failure = this.record(sequence, scenario, phase, step, phaseStart, sent, phaseEnd);
+
+                if (failure != null) {
+                    return CompletableFuture.failedFuture(failed(failure, sequence, workflowId, step));
+                }
+
+                if (phase == PhaseLatencies.Phase.CHECKOUT) {
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                if (step.taskId() != null) {
+                    taskId = step.taskId();
+                }
+            }
+        } catch (InterruptedException e) {
+            // The order was ended from outside while thinking; no step was in flight.
+            return CompletableFuture.failedFuture(e);
         } catch (Exception e) {
+            this.record(sequence, scenario, phase, e, phaseStart, sent, System.nanoTime());
+
             return CompletableFuture.failedFuture(e);
         }
     }
 
-    public static CompletableFuture<LoadTest> start(KioskApplication application) {
-        return CompletableFuture.supplyAsync(() -> {
-            final var loadTest = new LoadTest(application);
+    // The same steps as simulateKioskOrder, with each blocking call replaced by a callback and each sleep by a timer.
+    private final class KioskOrder {
+        private final long sequence;
+        private final Scenarios.Scenario scenario;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private PhaseLatencies.Phase phase = PhaseLatencies.Phase.EXECUTE;
+        private long phaseStart;
+        private long sent;
+        private String workflowId;
+        private String taskId;
+        private int steps;
+
+        KioskOrder(long sequence, Scenarios.Scenario scenario) {
+            this.sequence = sequence;
+            this.scenario = scenario;
+        }
+
+        CompletableFuture<Void> start(long intendedStartNanos) {
+            this.phaseStart = intendedStartNanos;
+            this.sent = System.nanoTime();
+
+            LoadTest.this.application.transport.start(this.sequence).whenComplete(this::onExecuted);
+
+            return this.done;
+        }
+
+        private void onExecuted(WorkflowTransport.Step step, Throwable error) {
+            var phaseEnd = System.nanoTime();
 
-            if (application.arguments.workflowsPerSecond() <= 0 || application.arguments.durationInSeconds().orElse(1) <= 0) {
-                return loadTest;
+            if (!this.recorded(step, error, phaseEnd)) {
+                return;
             }
 
-            final var interval = 1000 / application.arguments.workflowsPerSecond();
+            this.workflowId = step.workflowId();
 
-            Function<Long, Boolean> shouldContinue = _ -> true;
+            this.next(phaseEnd);
+        }
 
-            if (application.arguments.durationInSeconds().isPresent()) {
-                final var duration = application.arguments.durationInSeconds().get();
-                final var count = application.arguments.workflowsPerSecond() * duration;
+        private void next(long phaseEnd) {
+            var action = this.scenario.next(this.steps);
 
-                shouldContinue = i -> i < count;
+            // As with the virtual thread simulator, the next step is due when the think time elapses, however late the
+            // timer actually fires.
+            this.phase = action.phase();
+            this.phaseStart = phaseEnd + action.thinkNanos();
 
-                loadTest.log.info(String.format("Starting load test with %d workflows per second for %d seconds.", application.arguments.workflowsPerSecond(), duration));
-                loadTest.log.info(String.format("Total workflow count: %d.", count));
+            if (action.thinkNanos() > 0) {
+                LoadTest.this.timers.schedule(Duration.ofNanos(action.thinkNanos()), () -> this.signal(action.name(), this::onSignalled));
             } else {
-                loadTest.log.info(String.format("Starting load test with %d workflows per second.", application.arguments.workflowsPerSecond()));
+                this.signal(action.name(), this::onSignalled);
+            }
+        }
+
+        private void onSignalled(WorkflowTransport.Step step, Throwable error) {
+            var phaseEnd = System.nanoTime();
+
+            if (!this.recorded(step, error, phaseEnd)) {
+                return;
             }
 
-            final var runningFutures = new AtomicLong();
+            if (this.phase == PhaseLatencies.Phase.CHECKOUT) {
+                this.done.complete(null);
+                return;
+            }
+
+            ++this.steps;
+            this.next(phaseEnd);
+        }
 
-            long startTime = System.currentTimeMillis();
+        private void signal(String action, BiConsumer<WorkflowTransport.Step, Throwable> next) {
+            // Ended from outside while thinking.
+            if (this.done.isDone()) {
+                return;
+            }
 
-            for (long i = 0; shouldContinue.apply(i); ++i) {
-                var sequence = i;
+            this.sent = System.nanoTime();
+
+            try {
+                LoadTest.this.application.transport.signal(this.workflowId, this.taskId, action).whenComplete(next);
+            } catch (RuntimeException e) {
+                next.accept(null, e);
+            }
+        }
 
-                application.executor.submit(() -> {
-                    runningFutures.getAndIncrement();
-                    loadTest.workflowsStarted.getAndIncrement();
+        // Records the step, returning false (and failing the order) if there was no response or the response ends the
+        // order. Also false if the order was ended from outside while the step was in flight; the step still counts.
+        private boolean recorded(WorkflowTransport.Step step, Throwable error, long phaseEnd) {
+            if (error != null) {
+                var cause = error instanceof CompletionException ? error.getCause() : error;
 
-                    loadTest.simulateKioskOrder(sequence).exceptionally(e -> {
-                                loadTest.log.log(Level.SEVERE, STR."Error in load test: \{e.getMessage()}", e);
-                                runningFutures.getAndDecrement();
+                LoadTest.this.record(this.sequence, this.scenario, this.phase, cause, this.phaseStart, this.sent, phaseEnd);
+                this.done.completeExceptionally(cause);
+
+                return false;
+            }
+
+            var failure = LoadTest.this.record(this.sequence, this.scenario, this.phase, step, this.phaseStart, this.sent, phaseEnd);
+
+            if (failure != null) {
+                this.done.completeExceptionally(failed(failure, this.sequence, this.workflowId, step));
+
+                return false;
+            }
+
+            if (step.taskId() != null) {
+                this.taskId = step.taskId();
+            }
+
+            return !this.done.isDone();
+        }
+    }
+
+    // Runs this process's part of the load test: arrivals following `profile` from `startNanos` for `durationNanos`,
+    // numbered firstSequence, firstSequence + stride and so on. A standalone run is the whole of it; a worker in a
+    // distributed run gets a share, see LoadCoordinator; a capacity search runs one per step, see CapacityFinder.
+    // Orders still in flight at the end are drained or cancelled as `endPolicy` says, -end-policy unless given.
+    void run(ArrivalProfile profile, long startNanos, long durationNanos, long firstSequence, int stride) {
+        this.run(profile, startNanos, durationNanos, firstSequence, stride, this.application.arguments.endPolicy());
+    }
 
-                                return null;
-                            })
-                            .thenRun(runningFutures::getAndDecrement);
+    void run(ArrivalProfile profile, long startNanos, long durationNanos, long firstSequence, int stride, OrderScope.EndPolicy endPolicy) {
+        if (durationNanos != Long.MAX_VALUE) {
+            this.log.info(String.format("Starting load test with %s for %d seconds (%s simulator).", profile.describe(), TimeUnit.NANOSECONDS.toSeconds(durationNanos), this.simulator));
+        } else {
+            this.log.info(String.format("Starting load test with %s (%s simulator).", profile.describe(), this.simulator));
+        }
+
+        this.log.info(STR."Scenarios: \{this.scenarios.describe()}.");
+
+        final var scheduler = new ArrivalScheduler(profile, startNanos, durationNanos);
+
+        // Returns once every order started has finished; if interrupted, whatever is still in flight is cancelled.
+        try (var scope = new OrderScope(this.application.executor, this.application.orderTimeout)) {
+            for (long i = 0; ; ++i) {
+                var sequence = firstSequence + i * stride;
+                var intendedStartNanos = scheduler.awaitNext();
+
+                if (intendedStartNanos < 0) {
+                    break;
+                }
+
+                scope.fork(sequence, intendedStartNanos, () -> {
+                    var order = this.startKioskOrder(sequence, intendedStartNanos);
+
+                    order.whenComplete((_, e) -> {
+                        // Cancelled orders are expected with -end-policy=cancel, which logs how many it cancels.
+                        if (e != null && reason(e) != FailureReason.CANCELLED) {
+                            this.log.log(Level.SEVERE, STR."Error in load test: \{e.getMessage()}", e);
+                        }
+                    });
+
+                    return order;
                 });
+            }
+
+            this.arrivals.add(scheduler.arrivals());
+            this.maxLagNanos.accumulateAndGet(scheduler.maxLagNanos(), Math::max);
+
+            this.log.info(String.format("Actual rate: %f executions per second (max scheduling lag %.1f ms).",
+                    scheduler.arrivals() * 1e9 / (System.nanoTime() - startNanos),
+                    scheduler.maxLagNanos() / 1e6));
+
+            var inFlight = scope.inFlight();
+            var endNanos = System.nanoTime();
+
+            if (inFlight > 0) {
+                this.log.info(String.format("%s %d orders in flight...", endPolicy == OrderScope.EndPolicy.DRAIN ? "Draining" : "Cancelling", inFlight));
+            }
+
+            scope.join(endPolicy);
+
+            if (inFlight > 0) {
+                this.log.info(String.format("Orders in flight finished in %d ms.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - endNanos)));
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Every step of every run this process makes goes into one journal, if -journal is set.
+    private void openJournal() throws IOException {
+        var path = this.application.arguments.journal();
+
+        if (path.isPresent()) {
+            this.journal = new RunJournal(path.get());
+        }
+    }
+
+    private void closeJournal() throws IOException {
+        if (this.journal == null) {
+            return;
+        }
+
+        this.journal.close();
 
-                try {
-                    // Thread#sleep plays well with Project Loom's Virtual Threads, so this doesn't actually block a system thread.
-                    Thread.sleep(Duration.ofMillis(interval));
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+        this.log.info(String.format("Journaled %d steps to %s (%d dropped); analyse with %s=%s.",
+                this.journal.records(), this.journal.path(), this.journal.dropped(), Constants.Arguments.REPORT, this.journal.path()));
+    }
+
+    public static CompletableFuture<LoadTest> start(KioskApplication application) {
+        return CompletableFuture.supplyAsync(() -> {
+            final LoadTest loadTest;
+
+            try {
+                var scenarios = Scenarios.load(application.json, application.arguments.scenarios(), application.arguments.timeCompression());
+
+                loadTest = new LoadTest(application, application.arguments.simulator(), scenarios);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            // Orders that outlast the workflow's timeout end as TIMED_OUT instead of checking out.
+            for (var scenario : loadTest.scenarios.scenarios()) {
+                var meanDuration = scenario.meanDuration();
+
+                if (scenario.weight() > 0 && !application.orderTimeout.isZero() && meanDuration.compareTo(application.orderTimeout) > 0) {
+                    loadTest.log.warning(String.format("Scenario %s takes up to %d seconds per order on average, longer than the %d second workflow timeout; its orders will time out.",
+                            scenario.name(), meanDuration.toSeconds(), application.orderTimeout.toSeconds()));
                 }
             }
 
-            loadTest.log.info(String.format("Actual rate: %f executions per second.", (double) loadTest.workflowsStarted.get() / (System.currentTimeMillis() - startTime) * 1000));
+            loadTest.register(application.metrics);
+
+            try {
+                if (application.coordinator != null) {
+                    // The workers generate the load; the coordinator only hands out their shares and merges the results.
+                    application.coordinator.run(loadTest);
+
+                    loadTest.log.info(String.format("Combined results of %d workers: %d arrivals, max scheduling lag %.1f ms.",
+                            application.arguments.coordinator().orElseThrow(), loadTest.arrivals.sum(), loadTest.maxLagNanos.get() / 1e6));
+                } else if (application.arguments.worker().isPresent()) {
+                    var worker = new LoadCoordinator.Worker(application.json, application.arguments.worker().get());
+                    var assignment = worker.register();
+
+                    loadTest.openJournal();
+                    loadTest.run(assignment.profile(), assignment.startNanos(), assignment.durationNanos(), assignment.worker(), assignment.workers());
+                    loadTest.closeJournal();
+
+                    worker.report(loadTest.results(application.json).put("worker", assignment.worker()));
+                } else if (application.arguments.findCapacity().isPresent()) {
+                    var finder = new CapacityFinder(loadTest, application.arguments.findCapacity().get(), application.arguments.workflowsPerSecond(), loadTest.scenarios.longestOrder());
 
-            while (runningFutures.get() > 0) {
-                try {
-                    loadTest.log.info(String.format("Waiting for %d workflows to complete...", runningFutures.get()));
+                    finder.register(application.metrics);
 
-                    // Thread#sleep plays well with Project Loom's Virtual Threads, so this doesn't actually block a system thread.
-                    Thread.sleep(Duration.ofMillis(500));
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    loadTest.openJournal();
+                    finder.run();
+                    loadTest.closeJournal();
+                } else {
+                    if (application.arguments.workflowsPerSecond() <= 0 || application.arguments.durationInSeconds().orElse(1) <= 0) {
+                        return loadTest;
+                    }
+
+                    var durationNanos = application.arguments.durationInSeconds().map(TimeUnit.SECONDS::toNanos).orElse(Long.MAX_VALUE);
+
+                    loadTest.openJournal();
+                    loadTest.run(application.arguments.arrivalProfile(), System.nanoTime(), durationNanos, 0, 1);
+                    loadTest.closeJournal();
                 }
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
             }
 
+            loadTest.stop();
+
             loadTest.log.info(String.format("Load test complete. Started %d workflows.",
-                    loadTest.workflowsStarted.get()));
+                    loadTest.workflowsStarted.sum()));
+
+            if (loadTest.timers != null) {
+                loadTest.log.info(String.format("Think time timers fired up to %d ms late.", loadTest.timers.maxLateness().toMillis()));
+            }
+
+            loadTest.latencies.log(loadTest.log);
+
+            if (loadTest.scenarios.scenarios().size() > 1) {
+                for (var scenario : loadTest.scenarios.scenarios()) {
+                    var results = loadTest.scenarioResults[scenario.index()];
+
+                    results.latencies.log(loadTest.log, String.format("Scenario %s: %d orders completed, %d failed (latencies in milliseconds):",
+                            scenario.name(), results.completed.sum(), results.failed.sum()));
+                }
+            }
+
+            application.http.log(loadTest.log);
+            application.http.clients().log(loadTest.log);
+            application.transport.log(loadTest.log);
+
+            if (application.tokens != null) {
+                application.tokens.log(loadTest.log);
+            }
 
             return loadTest;
         });
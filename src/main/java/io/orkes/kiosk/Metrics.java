@@ -0,0 +1,191 @@
+package io.orkes.kiosk;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Serves the application's metrics in the Prometheus text format at /metrics.
+//
+// Nothing is recorded here. Each component keeps its own counters (LongAdders, so recording never contends at high
+// rates) in whatever structure suits it, and registers a collector that reads them when Prometheus scrapes. That way
+// the hot path never pays for label lookups or a shared registry.
+public class Metrics implements HttpHandler {
+    public enum Type {
+        COUNTER,
+        GAUGE,
+        HISTOGRAM
+    }
+
+    @FunctionalInterface
+    public interface Collector {
+        void collect(Samples samples);
+    }
+
+    // Upper bounds of the exported latency buckets, in seconds.
+    private static final double[] BUCKETS = { 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+    private record Family(String name, String help, Type type, Collector collector) {}
+
+    private final List<Family> families = new CopyOnWriteArrayList<>();
+
+    public Metrics() {
+        this.registerJvmMetrics();
+    }
+
+    public void register(String name, String help, Type type, Collector collector) {
+        this.families.add(new Family(name, help, type, collector));
+    }
+
+    // Writes the samples of one metric family.
+    public static class Samples {
+        private final StringBuilder output;
+        private final String name;
+
+        private Samples(StringBuilder output, String name) {
+            this.output = output;
+            this.name = name;
+        }
+
+        public void add(double value) {
+            this.add("", value);
+        }
+
+        // `labels` is a pre-rendered label set, see Metrics#labels.
+        public void add(String labels, double value) {
+            this.sample(this.name, labels, value);
+        }
+
+        public void histogram(LatencyHistogram histogram) {
+            this.histogram("", histogram);
+        }
+
+        public void histogram(String labels, LatencyHistogram histogram) {
+            var separator = labels.isEmpty() ? "" : ",";
+
+            for (var bucket : BUCKETS) {
+                var count = histogram.countAtOrBelow((long) (bucket * 1_000_000));
+
+                this.sample(STR."\{this.name}_bucket", STR."\{labels}\{separator}le=\"\{bucket}\"", count);
+            }
+
+            this.sample(STR."\{this.name}_bucket", STR."\{labels}\{separator}le=\"+Inf\"", histogram.count());
+            this.sample(STR."\{this.name}_sum", labels, histogram.sumMicros() / 1e6);
+            this.sample(STR."\{this.name}_count", labels, histogram.count());
+        }
+
+        private void sample(String name, String labels, double value) {
+            this.output.append(name);
+
+            if (!labels.isEmpty()) {
+                this.output.append('{').append(labels).append('}');
+            }
+
+            this.output.append(' ');
+
+            if (value == Math.rint(value) && !Double.isInfinite(value)) {
+                this.output.append((long) value);
+            } else {
+                this.output.append(value);
+            }
+
+            this.output.append('\n');
+        }
+    }
+
+    // Renders label pairs, e.g. labels("call", "execute", "status", 200) gives `call="execute",status="200"`.
+    public static String labels(Object... pairs) {
+        var labels = new StringBuilder();
+
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (i > 0) {
+                labels.append(',');
+            }
+
+            var value = pairs[i + 1].toString().replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+
+            labels.append(pairs[i]).append("=\"").append(value).append('"');
+        }
+
+        return labels.toString();
+    }
+
+    public String scrape() {
+        var output = new StringBuilder(16 * 1024);
+
+        for (var family : this.families) {
+            output.append("# HELP ").append(family.name()).append(' ').append(family.help()).append('\n');
+            output.append("# TYPE ").append(family.name()).append(' ').append(family.type().name().toLowerCase()).append('\n');
+
+            family.collector().collect(new Samples(output, family.name()));
+        }
+
+        return output.toString();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            var body = this.scrape().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (var os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    private void registerJvmMetrics() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        var threads = ManagementFactory.getThreadMXBean();
+        var runtime = ManagementFactory.getRuntimeMXBean();
+        var os = ManagementFactory.getOperatingSystemMXBean();
+
+        this.register("jvm_memory_used_bytes", "Memory in use by area.", Type.GAUGE, samples -> {
+            samples.add(labels("area", "heap"), memory.getHeapMemoryUsage().getUsed());
+            samples.add(labels("area", "nonheap"), memory.getNonHeapMemoryUsage().getUsed());
+        });
+
+        this.register("jvm_memory_max_bytes", "Maximum memory by area, or -1 if unbounded.", Type.GAUGE, samples -> {
+            samples.add(labels("area", "heap"), memory.getHeapMemoryUsage().getMax());
+            samples.add(labels("area", "nonheap"), memory.getNonHeapMemoryUsage().getMax());
+        });
+
+        this.register("jvm_gc_collections_total", "Garbage collections by collector.", Type.COUNTER, samples -> {
+            for (var gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                samples.add(labels("gc", gc.getName()), gc.getCollectionCount());
+            }
+        });
+
+        this.register("jvm_gc_collection_seconds_total", "Time spent in garbage collection by collector.", Type.COUNTER, samples -> {
+            for (var gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                samples.add(labels("gc", gc.getName()), gc.getCollectionTime() / 1e3);
+            }
+        });
+
+        // Virtual threads aren't included; see the executor metrics for those.
+        this.register("jvm_threads_live", "Live platform threads.", Type.GAUGE, samples -> samples.add(threads.getThreadCount()));
+
+        this.register("process_uptime_seconds", "Time since the JVM started.", Type.GAUGE, samples -> samples.add(runtime.getUptime() / 1e3));
+
+        if (os instanceof com.sun.management.OperatingSystemMXBean process) {
+            this.register("process_cpu_seconds_total", "CPU time used by the process.", Type.COUNTER,
+                    samples -> samples.add(process.getProcessCpuTime() / (double) TimeUnit.SECONDS.toNanos(1)));
+        }
+
+        this.register("system_load_average_1m", "System load average over the last minute.", Type.GAUGE, samples -> samples.add(os.getSystemLoadAverage()));
+    }
+}
@@ -0,0 +1,508 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// A stand-in for the handful of Conductor APIs this application uses, so that the client's own overhead can be measured
+// (and regressions caught) without a live cluster or network. Workflows don't actually execute; the server just tracks
+// enough state to answer the kiosk's execute/signal/search/terminate calls the way Conductor would.
+//
+// Workflows started or signalled asynchronously (see PollingTransport) reach their next yield task after the execute or
+// signal latency, in the background, and POST their state to the callbackUri input they were started with, if any.
+//
+// Latency, error and dropped connection rates are configurable to mimic an unhealthy server.
+public class MockConductorServer {
+    public record Options(
+            int port,
+            LatencyDistribution latency,
+            LatencyDistribution executeLatency,
+            LatencyDistribution signalLatency,
+            double errorRate,
+            int errorStatus,
+            double goAwayRate,
+            Duration tokenTtl
+    ) {}
+
+    private enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private static final class Workflow {
+        final String workflowId;
+        final String name;
+        final int version;
+        final long startTime;
+        final URI callbackUri;
+
+        volatile Status status = Status.RUNNING;
+
+        // The yield task the workflow is waiting at, null while it's on its way to the next one or once it's finished.
+        volatile String taskId;
+        private final AtomicInteger yields = new AtomicInteger();
+
+        Workflow(String name, int version, URI callbackUri) {
+            this.workflowId = UUID.randomUUID().toString();
+            this.name = name;
+            this.version = version;
+            this.startTime = System.currentTimeMillis();
+            this.callbackUri = callbackUri;
+        }
+    }
+
+    // Finished workflows can still be looked up for a while, as on Conductor.
+    private static final int FINISHED_RETAINED = 65_536;
+
+    private final Logger log = Logging.getLogger(MockConductorServer.class);
+    private final ObjectMapper json = new ObjectMapper();
+
+    private final Options options;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, ObjectNode> definitions = new ConcurrentHashMap<>();
+    private final Map<String, Workflow> running = new ConcurrentHashMap<>();
+    private final Map<String, Workflow> finished = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Workflow> eldest) {
+            return this.size() > FINISHED_RETAINED;
+        }
+    });
+
+    // Sends workflows' callbacks.
+    private final HttpClient callbacks = HttpClient.newBuilder().executor(this.executor).build();
+
+    private HttpServer server;
+
+    public MockConductorServer(Options options) {
+        this.options = options;
+    }
+
+    public String start() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", this.options.port()), 0);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/api/", this::handle);
+        this.server.start();
+
+        var url = STR."http://127.0.0.1:\{this.server.getAddress().getPort()}";
+
+        this.log.info(STR."Mock Conductor server listening on \{url}.");
+
+        return url;
+    }
+
+    public void stop() {
+        this.server.stop(0);
+        this.callbacks.close();
+        this.executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var path = exchange.getRequestURI().getPath().split("/");
+            var method = exchange.getRequestMethod();
+            var random = ThreadLocalRandom.current();
+
+            // /api/<resource>/...
+            var resource = path.length > 2 ? path[2] : "";
+
+            this.simulateLatency(resource, path);
+
+            if (random.nextDouble() < this.options.goAwayRate()) {
+                // The JDK server only speaks HTTP/1.1, so a GOAWAY is approximated by what a draining proxy does to an
+                // HTTP/1.1 client: the connection is closed without a response.
+                return;
+            }
+
+            if (!resource.equals("token") && this.isExpired(exchange.getRequestHeaders().getFirst("X-Authorization"))) {
+                this.send(exchange, 401, Map.of("message", "Token expired"));
+                return;
+            }
+
+            if (random.nextDouble() < this.options.errorRate()) {
+                this.send(exchange, this.options.errorStatus(), Map.of("message", "Injected failure"));
+                return;
+            }
+
+            switch (resource) {
+                case "token" -> this.token(exchange);
+                case "metadata" -> {
+                    if (method.equals("GET") && path.length == 5) {
+                        this.definition(exchange, path[4]);
+                    } else {
+                        this.publish(exchange);
+                    }
+                }
+                case "workflow" -> {
+                    if (method.equals("DELETE") && path.length == 4) {
+                        this.terminate(exchange, path[3]);
+                    } else if (path.length > 3 && path[3].equals("execute")) {
+                        this.execute(exchange, path[4], Integer.parseInt(path[5]));
+                    } else if (path.length > 4 && path[3].equals("bulk") && path[4].equals("terminate")) {
+                        this.terminateBulk(exchange);
+                    } else if (path.length > 3 && path[3].equals("search")) {
+                        this.search(exchange);
+                    } else if (method.equals("GET") && path.length == 4) {
+                        this.status(exchange, path[3]);
+                    } else if (method.equals("POST") && path.length == 4) {
+                        this.start(exchange, path[3], Integer.parseInt(parseQuery(exchange.getRequestURI().getRawQuery()).getOrDefault("version", "1")));
+                    } else {
+                        this.send(exchange, 404, Map.of("message", "Not found"));
+                    }
+                }
+                case "tasks" -> {
+                    if (path.length == 6 && path[5].equals("signal")) {
+                        this.signalAsync(exchange, path[3]);
+                    } else {
+                        this.signal(exchange, path[3]);
+                    }
+                }
+                default -> this.send(exchange, 404, Map.of("message", "Not found"));
+            }
+        }
+    }
+
+    private void simulateLatency(String resource, String[] path) {
+        var distribution = this.options.latency();
+
+        // Only the sync calls wait for the workflow; see #start and #signalAsync for the others.
+        if (resource.equals("tasks") && path[path.length - 1].equals("sync")) {
+            distribution = this.options.signalLatency();
+        } else if (resource.equals("workflow") && path.length > 3 && path[3].equals("execute")) {
+            distribution = this.options.executeLatency();
+        }
+
+        sleep(distribution);
+    }
+
+    private static void sleep(LatencyDistribution distribution) {
+        var nanos = distribution.sampleNanos();
+
+        if (nanos > 0) {
+            try {
+                // Thread#sleep plays well with Project Loom's Virtual Threads, so this doesn't actually block a system thread.
+                Thread.sleep(Duration.ofNanos(nanos));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void token(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+
+        // Shaped like a JWT so that clients can read the expiry the same way they would for a real token.
+        var encoder = Base64.getUrlEncoder().withoutPadding();
+        var expiry = Instant.now().plus(this.options.tokenTtl()).getEpochSecond();
+        var header = encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8));
+        var payload = encoder.encodeToString(STR."{\"exp\":\{expiry}}".getBytes(StandardCharsets.UTF_8));
+
+        this.send(exchange, 200, Map.of("token", STR."\{header}.\{payload}.mock"));
+    }
+
+    // Only tokens issued by this server are checked; anything else (or no token at all) is accepted.
+    private boolean isExpired(String token) {
+        var parts = token == null ? new String[0] : token.split("\\.");
+
+        if (parts.length != 3 || !parts[2].equals("mock")) {
+            return false;
+        }
+
+        try {
+            var claims = this.json.readTree(Base64.getUrlDecoder().decode(parts[1]));
+
+            return claims.path("exp").asLong(Long.MAX_VALUE) <= Instant.now().getEpochSecond();
+        } catch (IOException | IllegalArgumentException _) {
+            return false;
+        }
+    }
+
+    private void publish(HttpExchange exchange) throws IOException {
+        var definition = (ObjectNode) this.json.readTree(exchange.getRequestBody());
+        var now = System.currentTimeMillis();
+
+        // Like Conductor, the stored copy gets fields of the server's own, so clients can't expect it back verbatim.
+        definition.put("createTime", now);
+        definition.put("updateTime", now);
+
+        if (!definition.has("timeoutPolicy")) {
+            definition.put("timeoutPolicy", "ALERT_ONLY");
+        }
+
+        this.definitions.put(definition.get("name").asText(), definition);
+
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void definition(HttpExchange exchange, String name) throws IOException {
+        var definition = this.definitions.get(name);
+        var version = parseQuery(exchange.getRequestURI().getRawQuery()).get("version");
+
+        if (definition == null || (version != null && !version.equals(definition.path("version").asText()))) {
+            this.send(exchange, 404, Map.of("message", STR."No such workflow found by name: \{name}, version: \{version}"));
+            return;
+        }
+
+        this.send(exchange, 200, definition);
+    }
+
+    private void execute(HttpExchange exchange, String name, int version) throws IOException {
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+
+        var workflow = new Workflow(name, version, null);
+
+        this.running.put(workflow.workflowId, workflow);
+        this.advance(workflow, "Start");
+
+        this.sendWorkflowState(exchange, workflow.workflowId, Status.RUNNING);
+    }
+
+    // Starts a workflow without waiting for it, answering with its ID as plain text.
+    private void start(HttpExchange exchange, String name, int version) throws IOException {
+        var callbackUri = this.json.readTree(exchange.getRequestBody()).path("callbackUri").asText(null);
+        var workflow = new Workflow(name, version, callbackUri == null ? null : URI.create(callbackUri));
+
+        this.running.put(workflow.workflowId, workflow);
+
+        var body = workflow.workflowId.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(200, body.length);
+
+        try (var os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+
+        this.executor.execute(() -> {
+            sleep(this.options.executeLatency());
+            this.advance(workflow, "Start");
+        });
+    }
+
+    private void signal(HttpExchange exchange, String workflowId) throws IOException {
+        var action = this.json.readTree(exchange.getRequestBody()).path("action").asText();
+        var workflow = this.running.get(workflowId);
+
+        if (workflow == null) {
+            this.send(exchange, 404, Map.of("message", STR."Workflow \{workflowId} is not running"));
+            return;
+        }
+
+        this.sendWorkflowState(exchange, workflowId, this.advance(workflow, action));
+    }
+
+    // Completes the yield task and returns at once; the workflow moves on after the signal latency.
+    private void signalAsync(HttpExchange exchange, String workflowId) throws IOException {
+        var action = this.json.readTree(exchange.getRequestBody()).path("action").asText();
+        var workflow = this.running.get(workflowId);
+
+        if (workflow == null || workflow.taskId == null) {
+            this.send(exchange, 404, Map.of("message", STR."Workflow \{workflowId} has no task in progress"));
+            return;
+        }
+
+        workflow.taskId = null;
+
+        exchange.sendResponseHeaders(200, -1);
+
+        this.executor.execute(() -> {
+            sleep(this.options.signalLatency());
+            this.advance(workflow, action);
+        });
+    }
+
+    // Moves the workflow on to its next yield task, or finishes it. Mirrors the SWITCH in the KioskHandler workflow:
+    // AddItem and RemoveItem loop back to the yield task, Checkout terminates the order successfully and anything else
+    // fails it.
+    private Status advance(Workflow workflow, String action) {
+        var status = switch (action) {
+            case "Start", "AddItem", "RemoveItem" -> Status.RUNNING;
+            case "Checkout" -> Status.COMPLETED;
+            default -> Status.FAILED;
+        };
+
+        if (status == Status.RUNNING) {
+            workflow.taskId = STR."\{workflow.workflowId}-yield-\{workflow.yields.incrementAndGet()}";
+        } else {
+            workflow.taskId = null;
+            workflow.status = status;
+
+            this.running.remove(workflow.workflowId);
+            this.finished.put(workflow.workflowId, workflow);
+        }
+
+        if (workflow.callbackUri != null) {
+            this.callBack(workflow);
+        }
+
+        return status;
+    }
+
+    private void callBack(Workflow workflow) {
+        var body = new LinkedHashMap<String, Object>();
+
+        body.put("workflowId", workflow.workflowId);
+        body.put("workflowStatus", workflow.status.name());
+        body.put("taskId", workflow.taskId);
+
+        try {
+            var request = HttpRequest.newBuilder(workflow.callbackUri)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(this.json.writeValueAsBytes(body)))
+                    .build();
+
+            // Nobody listening only means the client falls back to polling.
+            this.callbacks.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // GET /api/workflow/{workflowId}?includeTasks=true, cut down to the status and the yield task in progress, if any.
+    private void status(HttpExchange exchange, String workflowId) throws IOException {
+        var workflow = this.running.get(workflowId);
+
+        if (workflow == null) {
+            workflow = this.finished.get(workflowId);
+        }
+
+        if (workflow == null) {
+            this.send(exchange, 404, Map.of("message", STR."No such workflow found by id: \{workflowId}"));
+            return;
+        }
+
+        var taskId = workflow.taskId;
+        var body = new LinkedHashMap<String, Object>();
+
+        body.put("workflowId", workflow.workflowId);
+        body.put("workflowName", workflow.name);
+        body.put("version", workflow.version);
+        body.put("status", workflow.status.name());
+        body.put("tasks", taskId == null ? List.of() : List.of(Map.of("taskId", taskId, "taskType", "YIELD", "status", "IN_PROGRESS")));
+
+        this.send(exchange, 200, body);
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        var query = parseQuery(exchange.getRequestURI().getRawQuery());
+        var start = Integer.parseInt(query.getOrDefault("start", "0"));
+        var size = Integer.parseInt(query.getOrDefault("size", "100"));
+
+        // Only `status = RUNNING` searches are supported, since those are the only ones the kiosk application makes.
+        var results = new ArrayList<Map<String, Object>>(size);
+        var index = 0;
+
+        for (var workflow : this.running.values()) {
+            if (index++ < start) {
+                continue;
+            }
+
+            if (results.size() == size) {
+                break;
+            }
+
+            results.add(Map.of(
+                    "workflowId", workflow.workflowId,
+                    "workflowType", workflow.name,
+                    "version", workflow.version,
+                    "startTime", workflow.startTime,
+                    "status", Status.RUNNING.name()
+            ));
+        }
+
+        this.send(exchange, 200, Map.of("totalHits", this.running.size(), "results", results));
+    }
+
+    private void terminate(HttpExchange exchange, String workflowId) throws IOException {
+        this.running.remove(workflowId);
+
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void terminateBulk(HttpExchange exchange) throws IOException {
+        var successful = new ArrayList<String>();
+        var errors = new LinkedHashMap<String, String>();
+
+        for (var id : this.json.readTree(exchange.getRequestBody())) {
+            var workflowId = id.asText();
+
+            if (this.running.remove(workflowId) != null) {
+                successful.add(workflowId);
+            } else {
+                errors.put(workflowId, "Workflow is not running");
+            }
+        }
+
+        this.send(exchange, 200, Map.of("bulkSuccessfulResults", successful, "bulkErrorResults", errors));
+    }
+
+    private void sendWorkflowState(HttpExchange exchange, String workflowId, Status status) throws IOException {
+        exchange.getResponseHeaders().set("workflowId", workflowId);
+        exchange.getResponseHeaders().set("workflowStatus", status.name());
+
+        var body = new LinkedHashMap<String, Object>();
+
+        body.put("workflowId", workflowId);
+        body.put("targetWorkflowId", workflowId);
+        body.put("targetWorkflowStatus", status.name());
+        body.put("responseType", status == Status.RUNNING ? "BLOCKING_TASK_INPUT" : "TARGET_WORKFLOW");
+        body.put("blockingTasks", status == Status.RUNNING ? List.of(Map.of("taskType", "YIELD", "status", "IN_PROGRESS")) : List.of());
+
+        this.send(exchange, 200, body);
+    }
+
+    private void send(HttpExchange exchange, int status, Object body) throws IOException {
+        var bytes = this.json.writeValueAsBytes(body);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (var os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        var parameters = new HashMap<String, String>();
+
+        if (query == null) {
+            return parameters;
+        }
+
+        for (var pair : query.split("&")) {
+            var parts = pair.split("=", 2);
+
+            parameters.put(URLDecoder.decode(parts[0], StandardCharsets.UTF_8), parts.length > 1 ? URLDecoder.decode(parts[1], StandardCharsets.UTF_8) : "");
+        }
+
+        return parameters;
+    }
+}
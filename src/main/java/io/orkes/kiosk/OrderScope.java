@@ -0,0 +1,136 @@
+package io.orkes.kiosk;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Owns the kiosk orders of one run the way a structured task scope owns its subtasks: every order is started within the
+// scope, none outlives it, and the run only moves on once each one has finished, one way or another.
+//
+// Each order has a deadline, the kiosk_order workflow's timeoutSeconds (after which Conductor times the workflow out
+// anyway), past which it fails as TIMED_OUT instead of lingering. When arrivals end, the end policy decides whether the
+// orders still in flight are drained (waited for, up to their deadlines) or cancelled. Either way, the end of the run is
+// signalled by the last order to finish rather than polled for: the owner counts as one more order until it joins, so
+// the count can only reach zero once arrivals have ended and every order has completed.
+//
+// JDK 21's StructuredTaskScope (a preview API) forks a thread per subtask, which the state machine simulator exists to
+// avoid, so orders are tracked by their futures. An order ended from outside is completed exceptionally; the simulators
+// don't take another step once their order is done.
+public class OrderScope implements AutoCloseable {
+    public enum EndPolicy {
+        // Orders in flight are allowed to finish, up to their deadlines.
+        DRAIN,
+        // Orders in flight fail as CANCELLED as soon as arrivals end.
+        CANCEL
+    }
+
+    private final Duration timeout;
+
+    // A coarse tick is plenty for deadlines of tens of seconds, and lets one revolution cover them.
+    private final TimerWheel deadlines;
+
+    private final Set<CompletableFuture<?>> orders = ConcurrentHashMap.newKeySet();
+
+    // The orders in flight, plus one for the owner until it joins.
+    private final AtomicLong parties = new AtomicLong(1);
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+
+    // Only changed by the owner; volatile for #inFlight.
+    private volatile boolean joined;
+
+    // A zero timeout means orders have no deadline.
+    OrderScope(Executor executor, Duration timeout) {
+        this.timeout = timeout;
+        this.deadlines = new TimerWheel(executor, Duration.ofMillis(100), 1024);
+    }
+
+    // Starts an order within this scope. Its deadline counts from `intendedStartNanos`, when it was due to start.
+    void fork(long sequence, long intendedStartNanos, Supplier<CompletableFuture<?>> start) {
+        if (this.joined) {
+            throw new IllegalStateException("Order scope has already been joined");
+        }
+
+        this.parties.incrementAndGet();
+
+        CompletableFuture<?> order;
+
+        try {
+            order = start.get();
+        } catch (RuntimeException e) {
+            this.arrive();
+            throw e;
+        }
+
+        this.orders.add(order);
+
+        if (!this.timeout.isZero()) {
+            var remaining = Duration.ofNanos(intendedStartNanos + this.timeout.toNanos() - System.nanoTime());
+
+            var deadline = this.deadlines.schedule(remaining, () -> order.completeExceptionally(new LoadTest.KioskOrderException(LoadTest.FailureReason.TIMED_OUT,
+                    STR."Order #\{sequence} did not complete within \{this.timeout.toSeconds()} seconds.")));
+
+            // Most orders finish well within their deadline, which shouldn't keep them reachable until it passes.
+            order.whenComplete((_, _) -> deadline.cancel());
+        }
+
+        // Exactly once per order, however it ends.
+        order.whenComplete((_, _) -> {
+            this.orders.remove(order);
+            this.arrive();
+        });
+    }
+
+    private void arrive() {
+        if (this.parties.decrementAndGet() == 0) {
+            this.finished.complete(null);
+        }
+    }
+
+    // Orders started but not yet finished.
+    long inFlight() {
+        return this.parties.get() - (this.joined ? 0 : 1);
+    }
+
+    // Ends arrivals and waits for every order in flight to finish, as `policy` says.
+    void join(EndPolicy policy) throws InterruptedException {
+        if (!this.joined) {
+            this.joined = true;
+            this.arrive();
+        }
+
+        if (policy == EndPolicy.CANCEL) {
+            this.cancel();
+        }
+
+        try {
+            this.finished.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void cancel() {
+        for (var order : this.orders) {
+            order.completeExceptionally(new LoadTest.KioskOrderException(LoadTest.FailureReason.CANCELLED, "Order cancelled at the end of the run."));
+        }
+    }
+
+    // Cancels whatever is still in flight, e.g. when the owner was interrupted before joining, so that no order outlives
+    // its scope.
+    @Override
+    public void close() {
+        if (!this.joined) {
+            this.joined = true;
+            this.arrive();
+        }
+
+        this.cancel();
+        this.finished.join();
+        this.deadlines.close();
+    }
+}
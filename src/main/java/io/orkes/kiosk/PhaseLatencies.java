@@ -0,0 +1,146 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.logging.Logger;
+
+// Latency histograms for each step of a simulated kiosk order, broken down by the HTTP status the step ended with.
+//
+// Latencies are measured from the time the step was *intended* to start rather than the time it actually started. If the
+// load generator falls behind (e.g. virtual threads queue up behind a slow server), that delay shows up in the numbers
+// instead of silently being left out, which is the classic coordinated omission problem.
+public class PhaseLatencies {
+    public enum Phase {
+        EXECUTE,
+        ADD_ITEM,
+        CHECKOUT,
+        // Last, since journals record phases by ordinal.
+        REMOVE_ITEM
+    }
+
+    // Used in place of an HTTP status when the request failed before a response was received.
+    public static final int NO_RESPONSE = 0;
+
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private final Map<Phase, Map<Integer, LatencyHistogram>> histograms = new EnumMap<>(Phase.class);
+
+    public PhaseLatencies() {
+        for (var phase : Phase.values()) {
+            this.histograms.put(phase, new ConcurrentHashMap<>());
+        }
+    }
+
+    public void record(Phase phase, int status, long intendedStartNanos, long endNanos) {
+        this.histogram(phase, status).recordNanos(endNanos - intendedStartNanos);
+    }
+
+    public LatencyHistogram histogram(Phase phase, int status) {
+        return this.histograms.get(phase).computeIfAbsent(status, _ -> new LatencyHistogram());
+    }
+
+    // Combines every status recorded for the given phase into a single histogram.
+    public LatencyHistogram total(Phase phase) {
+        var total = new LatencyHistogram();
+
+        for (var histogram : this.histograms.get(phase).values()) {
+            total.add(histogram);
+        }
+
+        return total;
+    }
+
+    // How many steps of the given phase ended with a status matching `statuses`.
+    public long count(Phase phase, IntPredicate statuses) {
+        var count = 0L;
+
+        for (var entry : this.histograms.get(phase).entrySet()) {
+            if (statuses.test(entry.getKey())) {
+                count += entry.getValue().count();
+            }
+        }
+
+        return count;
+    }
+
+    // Encodes every histogram as {"EXECUTE": {"200": {...}, ...}, ...}, see LatencyHistogram#toJson.
+    public ObjectNode toJson(ObjectMapper json) {
+        var node = json.createObjectNode();
+
+        for (var phase : Phase.values()) {
+            var byStatus = node.putObject(phase.name());
+
+            for (var entry : this.histograms.get(phase).entrySet()) {
+                byStatus.set(entry.getKey().toString(), entry.getValue().toJson(json));
+            }
+        }
+
+        return node;
+    }
+
+    // Merges latencies recorded by another process, encoded with #toJson, into these.
+    public void add(JsonNode node) {
+        for (var phase : Phase.values()) {
+            var byStatus = node.get(phase.name());
+
+            if (byStatus == null) {
+                continue;
+            }
+
+            for (var entries = byStatus.fields(); entries.hasNext(); ) {
+                var entry = entries.next();
+
+                this.histogram(phase, Integer.parseInt(entry.getKey())).add(LatencyHistogram.fromJson(entry.getValue()));
+            }
+        }
+    }
+
+    public void log(Logger log) {
+        this.log(log, "Latency summary (measured from intended start time, in milliseconds):");
+    }
+
+    public void log(Logger log, String heading) {
+        log.info(heading);
+
+        for (var phase : Phase.values()) {
+            var byStatus = new TreeMap<>(this.histograms.get(phase));
+
+            if (byStatus.isEmpty()) {
+                continue;
+            }
+
+            log.info(format(phase, "all", this.total(phase)));
+
+            for (var entry : byStatus.entrySet()) {
+                var status = entry.getKey() == NO_RESPONSE ? "error" : entry.getKey().toString();
+
+                log.info(format(phase, status, entry.getValue()));
+            }
+        }
+    }
+
+    private static String format(Phase phase, String status, LatencyHistogram histogram) {
+        var line = new StringBuilder(128);
+
+        line.append(String.format("%-11s %-6s count=%-8d", phase, status, histogram.count()));
+
+        for (var percentile : PERCENTILES) {
+            line.append(String.format(" p%s=%.1f", formatPercentile(percentile), histogram.valueAtPercentile(percentile) / 1000.0));
+        }
+
+        line.append(String.format(" max=%.1f", histogram.maxMicros() / 1000.0));
+
+        return line.toString();
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+}
@@ -0,0 +1,316 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// The poll and callback transports, see WorkflowTransport. Starting and signalling a workflow only waits for Conductor to
+// accept the call; the step then waits, without holding a connection, until the workflow is found at a yield task it
+// wasn't at before (or has finished).
+//
+// One poller serves every waiting workflow. Each poll interval it looks all of them up, with at most `pollConcurrency`
+// lookups in flight, and waits for the whole batch before starting the next, so a slow server slows the polling down
+// rather than piling lookups up. Conductor has no call that returns the tasks of several workflows at once, so a batch is
+// one lookup per workflow.
+//
+// With callbacks, workflows POST {"workflowId", "workflowStatus", "taskId"} to CALLBACK_PATH when they reach a yield
+// task or finish. The mock server does when a workflow is started with a callbackUri input; against Conductor the
+// workflow has to be given a task that does. Either way the poller still looks up workflows that haven't called back
+// within a poll interval, so a missing callback only costs latency.
+class PollingTransport implements WorkflowTransport, HttpHandler {
+    static final String CALLBACK_PATH = "/transport-callback/";
+
+    // How long a callback that arrived before its start's response is kept for the start to pick up. If no start picks it
+    // up by then, it belongs to a start that failed after the server accepted it, or it's a late duplicate.
+    private static final long EARLY_CALLBACK_TTL_NANOS = Duration.ofSeconds(30).toNanos();
+
+    // A step on its way to a yield task other than `previousTaskId`.
+    private record Waiter(String previousTaskId, long sinceNanos, CompletableFuture<Step> step) {}
+
+    private final Logger log = Logging.getLogger(PollingTransport.class);
+
+    private final KioskApplication application;
+    private final Options options;
+    private final boolean callbacks;
+
+    // By workflow ID. A callback can arrive before the start call's response, in which case it leaves a waiter that's
+    // already complete for the start to pick up. Those are only left while a start is pending, and the poller sweeps up
+    // any still there after EARLY_CALLBACK_TTL_NANOS.
+    private final Map<String, Waiter> waiting = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingStarts = new AtomicInteger();
+
+    private final Semaphore lookups;
+    private final Thread poller;
+    private volatile boolean closed;
+
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder callbacksReceived = new LongAdder();
+
+    PollingTransport(KioskApplication application, Options options, boolean callbacks) {
+        this.application = application;
+        this.options = options;
+        this.callbacks = callbacks;
+        this.lookups = new Semaphore(options.pollConcurrency());
+        this.poller = Thread.ofVirtual().name("transport-poller").start(this::poll);
+    }
+
+    boolean callbacks() {
+        return this.callbacks;
+    }
+
+    @Override
+    public CompletableFuture<Step> start(long sequence) {
+        var request = this.application.newRequestBuilder()
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(this.application.templates.startBody(sequence)))
+                .uri(this.application.templates.startUri())
+                .build();
+
+        this.pendingStarts.incrementAndGet();
+
+        return this.application.http.sendAsync(CallType.EXECUTE, request, HttpResponse.BodyHandlers.ofString()).handle((response, error) -> {
+            try {
+                if (error != null) {
+                    return CompletableFuture.<Step>failedFuture(error instanceof CompletionException ? error.getCause() : error);
+                }
+
+                if (response.statusCode() != 200) {
+                    return CompletableFuture.completedFuture(new Step(response.statusCode(), null, null, null));
+                }
+
+                // Answered with the workflow ID as plain text.
+                var workflowId = response.body().strip();
+
+                return this.await(workflowId, null).step();
+            } finally {
+                // Only once an early callback would have been picked up.
+                this.pendingStarts.decrementAndGet();
+            }
+        }).thenCompose(Function.identity());
+    }
+
+    @Override
+    public CompletableFuture<Step> signal(String workflowId, String taskId, String action) {
+        // Registered before the signal is sent, so that a callback can't get here first.
+        var waiter = this.await(workflowId, taskId);
+
+        var request = this.application.newRequestBuilder()
+                .header("Content-Type", "application/json")
+                .header("X-Kiosk-Action", action) // This is just for debugging purposes.
+                .POST(HttpRequest.BodyPublishers.ofByteArray(this.application.templates.signalBody(action)))
+                .uri(this.application.templates.asyncSignalUri(workflowId))
+                .build();
+
+        this.application.http.sendAsync(CallType.SIGNAL, request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            if (error != null) {
+                this.waiting.remove(workflowId, waiter);
+                waiter.step().completeExceptionally(error);
+            } else if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                // The workflow won't move, so there's nothing to wait for.
+                this.waiting.remove(workflowId, waiter);
+                waiter.step().complete(new Step(response.statusCode(), workflowId, null, null));
+            }
+        });
+
+        return waiter.step();
+    }
+
+    private Waiter await(String workflowId, String previousTaskId) {
+        var waiter = this.waiting.compute(workflowId, (_, early) -> {
+            if (early != null && early.step().isDone() && early.previousTaskId() == null && previousTaskId == null) {
+                return early;
+            }
+
+            return new Waiter(previousTaskId, System.nanoTime(), new CompletableFuture<>());
+        });
+
+        // Whoever completes it, it stops being polled.
+        waiter.step().whenComplete((_, _) -> this.waiting.remove(workflowId, waiter));
+
+        return waiter;
+    }
+
+    // Completes the workflow's waiter if it's now at a yield task other than the one it was signalled at, or finished.
+    // Otherwise it keeps waiting.
+    private void arrived(String workflowId, String workflowStatus, String taskId, boolean callback) {
+        var waiter = this.waiting.get(workflowId);
+
+        if (waiter == null) {
+            // A start's callback that beat its response; anything else has nobody waiting for it any more.
+            if (callback && taskId != null && this.pendingStarts.get() > 0) {
+                this.waiting.putIfAbsent(workflowId, new Waiter(null, System.nanoTime(),
+                        CompletableFuture.completedFuture(new Step(200, workflowId, workflowStatus, taskId))));
+            }
+
+            return;
+        }
+
+        var finished = !workflowStatus.equals("RUNNING") && !workflowStatus.equals("PAUSED");
+
+        if (finished || (taskId != null && !taskId.equals(waiter.previousTaskId()))) {
+            waiter.step().complete(new Step(200, workflowId, workflowStatus, finished ? null : taskId));
+        }
+    }
+
+    private void poll() {
+        var intervalNanos = this.options.pollInterval().toNanos();
+
+        while (!this.closed) {
+            try {
+                // Thread#sleep plays well with Project Loom's Virtual Threads, so this doesn't actually block a system thread.
+                Thread.sleep(this.options.pollInterval());
+
+                var now = System.nanoTime();
+                var batch = new ArrayList<CompletableFuture<?>>();
+
+                for (var entry : this.waiting.entrySet()) {
+                    var waiter = entry.getValue();
+
+                    // Only an early callback's waiter is still here once complete.
+                    if (waiter.step().isDone()) {
+                        if (now - waiter.sinceNanos() > EARLY_CALLBACK_TTL_NANOS) {
+                            this.waiting.remove(entry.getKey(), waiter);
+                        }
+
+                        continue;
+                    }
+
+                    // With callbacks, only workflows that seem to have missed theirs.
+                    if (this.callbacks && now - waiter.sinceNanos() < intervalNanos) {
+                        continue;
+                    }
+
+                    this.lookups.acquire();
+                    batch.add(this.lookup(entry.getKey()).whenComplete((_, _) -> this.lookups.release()));
+                }
+
+                CompletableFuture.allOf(batch.toArray(CompletableFuture[]::new)).exceptionally(_ -> null).join();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                this.log.log(Level.WARNING, "Polling workflows failed.", e);
+            }
+        }
+    }
+
+    private CompletableFuture<?> lookup(String workflowId) {
+        this.polls.increment();
+
+        var request = this.application.newRequestBuilder()
+                .GET()
+                .uri(this.application.templates.statusUri(workflowId))
+                .build();
+
+        return this.application.http.sendAsync(CallType.POLL, request, HttpResponse.BodyHandlers.ofByteArray()).thenAccept(response -> {
+            if (response.statusCode() == 404) {
+                var waiter = this.waiting.get(workflowId);
+
+                if (waiter != null) {
+                    waiter.step().complete(new Step(404, workflowId, null, null));
+                }
+
+                return;
+            }
+
+            // Anything else that isn't an answer is tried again next time round; the order's deadline bounds how long.
+            if (response.statusCode() != 200) {
+                return;
+            }
+
+            try {
+                var workflow = this.application.json.readTree(response.body());
+
+                this.arrived(workflowId, workflow.path("status").asText(), yieldTaskId(workflow), false);
+            } catch (IOException e) {
+                this.log.log(Level.FINE, STR."Unreadable status for workflow \{workflowId}.", e);
+            }
+        });
+    }
+
+    // The yield task the workflow is blocked at, if any.
+    private static String yieldTaskId(JsonNode workflow) {
+        for (var task : workflow.path("tasks")) {
+            if (task.path("taskType").asText().equals("YIELD") && task.path("status").asText().equals("IN_PROGRESS")) {
+                return task.path("taskId").asText(null);
+            }
+        }
+
+        return null;
+    }
+
+    // The callback listener, served at CALLBACK_PATH.
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            JsonNode body;
+
+            try {
+                body = this.application.json.readTree(exchange.getRequestBody());
+            } catch (JsonProcessingException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            var workflowId = body.path("workflowId").asText(null);
+            var workflowStatus = body.path("workflowStatus").asText(null);
+
+            if (workflowId == null || workflowStatus == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            this.callbacksReceived.increment();
+            this.arrived(workflowId, workflowStatus, body.path("taskId").asText(null), true);
+
+            exchange.sendResponseHeaders(204, -1);
+        }
+    }
+
+    @Override
+    public void register(Metrics metrics) {
+        metrics.register("kiosk_transport_waiting", "Workflows the transport is waiting to see at a yield task.", Metrics.Type.GAUGE,
+                samples -> samples.add(this.waiting.size()));
+        metrics.register("kiosk_transport_polls_total", "Workflow status lookups made by the transport's poller.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.polls.sum()));
+
+        if (this.callbacks) {
+            metrics.register("kiosk_transport_callbacks_total", "Callbacks received from workflows that reached a yield task or finished.", Metrics.Type.COUNTER,
+                    samples -> samples.add(this.callbacksReceived.sum()));
+        }
+    }
+
+    @Override
+    public void log(Logger log) {
+        log.info(String.format("Transport made %d status lookups%s.", this.polls.sum(),
+                this.callbacks ? String.format(" and received %d callbacks", this.callbacksReceived.sum()) : ""));
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.poller.interrupt();
+    }
+}
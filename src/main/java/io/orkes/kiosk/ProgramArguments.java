@@ -1,19 +1,45 @@
 package io.orkes.kiosk;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
 
 public record ProgramArguments(
         boolean auth,
         boolean cleanup,
+        int cleanupConcurrency,
         boolean performLoadTest,
         int workflowsPerSecond,
         Optional<Integer> durationInSeconds,
+        ArrivalProfile arrivalProfile,
+        LoadTest.Simulator simulator,
+        OrderScope.EndPolicy endPolicy,
+        String scenarios,
+        Optional<Double> timeCompression,
+        WorkflowTransport.Options transport,
+        Optional<Integer> coordinator,
+        Optional<URI> worker,
+        Optional<CapacityFinder.Options> findCapacity,
+        Optional<Path> journal,
+        Optional<Path> report,
+        Duration reportInterval,
         String apiTestMethod,
-        String apiTestUri
+        String apiTestUri,
+        int port,
+        Optional<Path> assetsDirectory,
+        HttpClientPool.Options httpClients,
+        RetryPolicy retryPolicy,
+        CircuitBreaker.Options circuitBreaker,
+        AdmissionController.Options admission,
+        AsyncLogHandler.OverflowPolicy logOverflow,
+        Optional<MockConductorServer.Options> mockConductor
 ) {
     public static ProgramArguments parse(String[] args) {
         boolean auth = false;
         boolean cleanup = false;
+        int cleanupConcurrency = 32;
         boolean performLoadTest = false;
 
         // With each workflow representing the actions being taken on a single kiosk, the number of workflows per second
@@ -21,9 +47,72 @@ public record ProgramArguments(
         int workflowsPerSecond = 10;
         var durationInSeconds = Optional.<Integer>empty();
 
+        // The workflows per second above is the starting rate for the ramp and step profiles.
+        String arrivalProfile = "constant";
+        var rampTo = Optional.<Integer>empty();
+        int stepIncrement = 10;
+        int stepIntervalInSeconds = 30;
+
+        // How each simulated kiosk is run, see LoadTest.Simulator.
+        var simulator = LoadTest.Simulator.VIRTUAL_THREADS;
+
+        // What happens to the orders still in flight when a run ends, see OrderScope.
+        var endPolicy = OrderScope.EndPolicy.DRAIN;
+
+        // The mix of orders the kiosks place, bundled or from a file, and how much faster than real time they think, see
+        // Scenarios. -time-compression overrides the factor the scenarios give.
+        var scenarios = Scenarios.DEFAULT;
+        var timeCompression = Optional.<Double>empty();
+
+        // How the load test's orders start and signal their workflows, see WorkflowTransport.
+        var transport = WorkflowTransport.Options.defaults();
+
+        // Splits the load test between several processes, see LoadCoordinator. The coordinator is given the number of
+        // workers to wait for, each worker the coordinator's URL.
+        var coordinator = Optional.<Integer>empty();
+        var worker = Optional.<URI>empty();
+
+        // Searches for the highest rate that meets the SLOs instead of running a fixed one, see CapacityFinder. The
+        // search starts from -workflows-per-second.
+        boolean findCapacity = false;
+        var capacity = CapacityFinder.Options.defaults();
+
+        // Records every step of the load test to this file, see RunJournal. -report=<file> analyses one instead of
+        // running anything, see JournalReport.
+        var journal = Optional.<Path>empty();
+        var report = Optional.<Path>empty();
+        int reportIntervalInSeconds = 10;
+
         String apiTestMethod = Constants.Arguments.DEFAULT_API_TEST_METHOD;
         String apiTestUri = Constants.Arguments.DEFAULT_API_TEST_URI;
 
+        // Port of the kiosk server. Several instances on one machine (e.g. distributed load test workers) need their own.
+        int port = 3000;
+
+        // Serve the UI from this directory instead of the bundled resources.
+        var assetsDirectory = Optional.<Path>empty();
+
+        var httpClients = HttpClientPool.Options.defaults();
+        var retryPolicy = RetryPolicy.defaults();
+        var circuitBreaker = CircuitBreaker.Options.defaults();
+
+        // Bounds the concurrent requests each kiosk server endpoint works on, see AdmissionController.
+        var admission = AdmissionController.Options.defaults();
+
+        // What happens to log records when they're produced faster than they can be written, see AsyncLogHandler.
+        var logOverflow = AsyncLogHandler.OverflowPolicy.DROP;
+
+        // Replaces CONDUCTOR_SERVER_URL with an in-process mock server, see MockConductorServer.
+        boolean mockConductor = false;
+        int mockPort = 0;
+        var mockLatency = LatencyDistribution.ZERO;
+        var mockExecuteLatency = Optional.<LatencyDistribution>empty();
+        var mockSignalLatency = Optional.<LatencyDistribution>empty();
+        double mockErrorRate = 0;
+        int mockErrorStatus = 500;
+        double mockGoAwayRate = 0;
+        int mockTokenTtlInSeconds = 3600;
+
         for (String arg : args) {
             if (arg.equals(Constants.Arguments.AUTH)) {
                 auth = true;
@@ -31,17 +120,201 @@ public record ProgramArguments(
                 cleanup = true;
             } else if (arg.equals(Constants.Arguments.LOAD_TEST)) {
                 performLoadTest = true;
+            } else if (arg.equals(Constants.Arguments.MOCK_CONDUCTOR)) {
+                mockConductor = true;
+            } else if (arg.startsWith(Constants.Arguments.CLEANUP_CONCURRENCY)) {
+                cleanupConcurrency = Integer.parseInt(arg.split("=", 2)[1]);
             } else if (arg.startsWith(Constants.Arguments.WORKFLOWS_PER_SECOND)) {
                 workflowsPerSecond = Integer.parseInt(arg.split("=", 2)[1]);
             } else if (arg.startsWith(Constants.Arguments.DURATION_IN_SECONDS)) {
                 durationInSeconds = Optional.of(Integer.parseInt(arg.split("=", 2)[1]));
+            } else if (arg.startsWith(Constants.Arguments.ARRIVAL_PROFILE)) {
+                arrivalProfile = arg.split("=", 2)[1];
+            } else if (arg.startsWith(Constants.Arguments.RAMP_TO)) {
+                rampTo = Optional.of(Integer.parseInt(arg.split("=", 2)[1]));
+            } else if (arg.startsWith(Constants.Arguments.STEP_INCREMENT)) {
+                stepIncrement = Integer.parseInt(arg.split("=", 2)[1]);
+            } else if (arg.startsWith(Constants.Arguments.STEP_INTERVAL_IN_SECONDS)) {
+                stepIntervalInSeconds = Integer.parseInt(arg.split("=", 2)[1]);
+            } else if (arg.startsWith(Constants.Arguments.SIMULATOR)) {
+                simulator = switch (arg.split("=", 2)[1]) {
+                    case "threads" -> LoadTest.Simulator.VIRTUAL_THREADS;
+                    case "state-machine" -> LoadTest.Simulator.STATE_MACHINE;
+                    default -> throw new IllegalArgumentException(STR."\{Constants.Arguments.SIMULATOR} must be threads or state-machine");
+                };
+            } else if (arg.startsWith(Constants.Arguments.END_POLICY)) {
+                endPolicy = switch (arg.split("=", 2)[1]) {
+                    case "drain" -> OrderScope.EndPolicy.DRAIN;
+                    case "cancel" -> OrderScope.EndPolicy.CANCEL;
+                    default -> throw new IllegalArgumentException(STR."\{Constants.Arguments.END_POLICY} must be drain or cancel");
+                };
+            } else if (arg.startsWith(Constants.Arguments.SCENARIOS)) {
+                scenarios = arg.split("=", 2)[1];
+            } else if (arg.startsWith(Constants.Arguments.TIME_COMPRESSION)) {
+                timeCompression = Optional.of(Double.parseDouble(arg.split("=", 2)[1]));
+            } else if (arg.startsWith(Constants.Arguments.TRANSPORT)) {
+                var kind = switch (arg.split("=", 2)[1]) {
+                    case "sync" -> WorkflowTransport.Kind.SYNC;
+                    case "poll" -> WorkflowTransport.Kind.POLL;
+                    case "callback" -> WorkflowTransport.Kind.CALLBACK;
+                    default -> throw new IllegalArgumentException(STR."\{Constants.Arguments.TRANSPORT} must be sync, poll or callback");
+                };
+
+                transport = new WorkflowTransport.Options(kind, transport.consistency(), transport.pollInterval(), transport.pollConcurrency(), transport.callbackUri());
+            } else if (arg.startsWith(Constants.Arguments.CONSISTENCY)) {
+                var consistency = switch (arg.split("=", 2)[1]) {
+                    case "synchronous" -> WorkflowTransport.Consistency.SYNCHRONOUS;
+                    case "durable" -> WorkflowTransport.Consistency.DURABLE;
+                    case "region-durable" -> WorkflowTransport.Consistency.REGION_DURABLE;
+                    default -> throw new IllegalArgumentException(STR."\{Constants.Arguments.CONSISTENCY} must be synchronous, durable or region-durable");
+                };
+
+                transport = new WorkflowTransport.Options(transport.kind(), consistency, transport.pollInterval(), transport.pollConcurrency(), transport.callbackUri());
+            } else if (arg.startsWith(Constants.Arguments.POLL_INTERVAL_IN_MILLIS)) {
+                transport = new WorkflowTransport.Options(transport.kind(), transport.consistency(), Duration.ofMillis(Long.parseLong(arg.split("=", 2)[1])), transport.pollConcurrency(), transport.callbackUri());
+            } else if (arg.startsWith(Constants.Arguments.POLL_CONCURRENCY)) {
+                transport = new WorkflowTransport.Options(transport.kind(), transport.consistency(), transport.pollInterval(), Integer.parseInt(arg.split("=", 2)[1]), transport.callbackUri());
+            } else if (arg.startsWith(Constants.Arguments.CALLBACK_URI)) {
+                transport = new WorkflowTransport.Options(transport.kind(), transport.consistency(), transport.pollInterval(), transport.pollConcurrency(), Optional.of(URI.create(arg.split("=", 2)[1])));
+            } else if (arg.startsWith(Constants.Arguments.COORDINATOR)) {
+                coordinator = Optional.of(Integer.parseInt(arg.split("=", 2)[1]));
+            } else if (arg.startsWith(Constants.Arguments.WORKER)) {
+                worker = Optional.of(URI.create(arg.split("=", 2)[1]));
+            } else if (arg.equals(Constants.Arguments.FIND_CAPACITY)) {
+                findCapacity = true;
+            } else if (arg.startsWith(Constants.Arguments.SLO_P99_IN_MILLIS)) {
+                capacity = new CapacityFinder.Options(Duration.ofMillis(Long.parseLong(arg.split("=", 2)[1])), capacity.errorRate(), capacity.stepDuration(), capacity.maxRate(), capacity.precision(), capacity.confirmDuration());
+            } else if (arg.startsWith(Constants.Arguments.SLO_ERROR_RATE)) {
+                capacity = new CapacityFinder.Options(capacity.p99(), Double.parseDouble(arg.split("=", 2)[1]), capacity.stepDuration(), capacity.maxRate(), capacity.precision(), capacity.confirmDuration());
+            } else if (arg.startsWith(Constants.Arguments.CAPACITY_STEP_IN_SECONDS)) {
+                capacity = new CapacityFinder.Options(capacity.p99(), capacity.errorRate(), Duration.ofSeconds(Long.parseLong(arg.split("=", 2)[1])), capacity.maxRate(), capacity.precision(), capacity.confirmDuration());
+            } else if (arg.startsWith(Constants.Arguments.CAPACITY_MAX_RATE)) {
+                capacity = new CapacityFinder.Options(capacity.p99(), capacity.errorRate(), capacity.stepDuration(), Double.parseDouble(arg.split("=", 2)[1]), capacity.precision(), capacity.confirmDuration());
+            } else if (arg.startsWith(Constants.Arguments.CAPACITY_PRECISION)) {
+                capacity = new CapacityFinder.Options(capacity.p99(), capacity.errorRate(), capacity.stepDuration(), capacity.maxRate(), Double.parseDouble(arg.split("=", 2)[1]), capacity.confirmDuration());
+            } else if (arg.startsWith(Constants.Arguments.CAPACITY_CONFIRM_IN_SECONDS)) {
+                capacity = new CapacityFinder.Options(capacity.p99(), capacity.errorRate(), capacity.stepDuration(), capacity.maxRate(), capacity.precision(), Duration.ofSeconds(Long.parseLong(arg.split("=", 2)[1])));
+            } else if (arg.startsWith(Constants.Arguments.JOURNAL)) {
+                journal = Optional.of(Path.of(arg.split("=", 2)[1]));
+            } else if (arg.startsWith(Constants.Arguments.REPORT_INTERVAL_IN_SECONDS)) {
+                reportIntervalInSeconds = Integer.parseInt(arg.split("=", 2)[1]);
+            } else if (arg.startsWith(Constants.Arguments.REPORT)) {
+                report = Optional.of(Path.of(arg.split("=", 2)[1]));
+            } else if (arg.startsWith(Constants.Arguments.PORT)) {
+                port = Integer.parseInt(arg.split("=", 2)[1]);
+            } else if (arg.startsWith(Constants.Arguments.HTTP_CLIENTS)) {
+                httpClients = new HttpClientPool.Options(Integer.parseInt(arg.split("=", 2)[1]), httpClients.version(), httpClients.maxStreamsPerConnection());
+            } else if (arg.startsWith(Constants.Arguments.HTTP_VERSION)) {
+                var version = switch (arg.split("=", 2)[1]) {
+                    case "1.1" -> HttpClient.Version.HTTP_1_1;
+                    case "2" -> HttpClient.Version.HTTP_2;
+                    default -> throw new IllegalArgumentException(STR."\{Constants.Arguments.HTTP_VERSION} must be 1.1 or 2");
+                };
+
+                httpClients = new HttpClientPool.Options(httpClients.shards(), version, httpClients.maxStreamsPerConnection());
+            } else if (arg.startsWith(Constants.Arguments.MAX_STREAMS_PER_CONNECTION)) {
+                httpClients = new HttpClientPool.Options(httpClients.shards(), httpClients.version(), Integer.parseInt(arg.split("=", 2)[1]));
+            } else if (arg.startsWith(Constants.Arguments.MAX_ATTEMPTS)) {
+                retryPolicy = new RetryPolicy(Integer.parseInt(arg.split("=", 2)[1]), retryPolicy.baseDelay(), retryPolicy.maxDelay(), retryPolicy.budgetRatio());
+            } else if (arg.startsWith(Constants.Arguments.RETRY_BASE_DELAY_IN_MILLIS)) {
+                retryPolicy = new RetryPolicy(retryPolicy.maxAttempts(), Duration.ofMillis(Long.parseLong(arg.split("=", 2)[1])), retryPolicy.maxDelay(), retryPolicy.budgetRatio());
+            } else if (arg.startsWith(Constants.Arguments.RETRY_MAX_DELAY_IN_MILLIS)) {
+                retryPolicy = new RetryPolicy(retryPolicy.maxAttempts(), retryPolicy.baseDelay(), Duration.ofMillis(Long.parseLong(arg.split("=", 2)[1])), retryPolicy.budgetRatio());
+            } else if (arg.startsWith(Constants.Arguments.RETRY_BUDGET)) {
+                retryPolicy = new RetryPolicy(retryPolicy.maxAttempts(), retryPolicy.baseDelay(), retryPolicy.maxDelay(), Double.parseDouble(arg.split("=", 2)[1]));
+            } else if (arg.startsWith(Constants.Arguments.CIRCUIT_BREAKER_THRESHOLD)) {
+                circuitBreaker = new CircuitBreaker.Options(Double.parseDouble(arg.split("=", 2)[1]), circuitBreaker.minimumCalls(), circuitBreaker.window(), circuitBreaker.openDuration());
+            } else if (arg.startsWith(Constants.Arguments.CIRCUIT_BREAKER_OPEN_IN_MILLIS)) {
+                circuitBreaker = new CircuitBreaker.Options(circuitBreaker.failureRateThreshold(), circuitBreaker.minimumCalls(), circuitBreaker.window(), Duration.ofMillis(Long.parseLong(arg.split("=", 2)[1])));
+            } else if (arg.startsWith(Constants.Arguments.ADMISSION_LIMIT)) {
+                admission = new AdmissionController.Options(Integer.parseInt(arg.split("=", 2)[1]), admission.maxLimit(), admission.queueSize(), admission.queueTimeout(), admission.adaptive());
+            } else if (arg.startsWith(Constants.Arguments.ADMISSION_MAX_LIMIT)) {
+                admission = new AdmissionController.Options(admission.limit(), Integer.parseInt(arg.split("=", 2)[1]), admission.queueSize(), admission.queueTimeout(), admission.adaptive());
+            } else if (arg.startsWith(Constants.Arguments.ADMISSION_QUEUE_TIMEOUT_IN_MILLIS)) {
+                admission = new AdmissionController.Options(admission.limit(), admission.maxLimit(), admission.queueSize(), Duration.ofMillis(Long.parseLong(arg.split("=", 2)[1])), admission.adaptive());
+            } else if (arg.startsWith(Constants.Arguments.ADMISSION_QUEUE)) {
+                admission = new AdmissionController.Options(admission.limit(), admission.maxLimit(), Integer.parseInt(arg.split("=", 2)[1]), admission.queueTimeout(), admission.adaptive());
+            } else if (arg.startsWith(Constants.Arguments.ADMISSION_ADAPTIVE)) {
+                admission = new AdmissionController.Options(admission.limit(), admission.maxLimit(), admission.queueSize(), admission.queueTimeout(), Boolean.parseBoolean(arg.split("=", 2)[1]));
+            } else if (arg.startsWith(Constants.Arguments.LOG_OVERFLOW)) {
+                logOverflow = switch (arg.split("=", 2)[1]) {
+                    case "drop" -> AsyncLogHandler.OverflowPolicy.DROP;
+                    case "sample" -> AsyncLogHandler.OverflowPolicy.SAMPLE;
+                    case "block" -> AsyncLogHandler.OverflowPolicy.BLOCK;
+                    default -> throw new IllegalArgumentException(STR."\{Constants.Arguments.LOG_OVERFLOW} must be drop, sample or block");
+                };
+            } else if (arg.startsWith(Constants.Arguments.MOCK_PORT)) {
+                mockPort = Integer.parseInt(arg.split("=", 2)[1]);
+            } else if (arg.startsWith(Constants.Arguments.MOCK_LATENCY)) {
+                mockLatency = LatencyDistribution.parse(arg.split("=", 2)[1]);
+            } else if (arg.startsWith(Constants.Arguments.MOCK_EXECUTE_LATENCY)) {
+                mockExecuteLatency = Optional.of(LatencyDistribution.parse(arg.split("=", 2)[1]));
+            } else if (arg.startsWith(Constants.Arguments.MOCK_SIGNAL_LATENCY)) {
+                mockSignalLatency = Optional.of(LatencyDistribution.parse(arg.split("=", 2)[1]));
+            } else if (arg.startsWith(Constants.Arguments.MOCK_ERROR_RATE)) {
+                mockErrorRate = Double.parseDouble(arg.split("=", 2)[1]);
+            } else if (arg.startsWith(Constants.Arguments.MOCK_ERROR_STATUS)) {
+                mockErrorStatus = Integer.parseInt(arg.split("=", 2)[1]);
+            } else if (arg.startsWith(Constants.Arguments.MOCK_GOAWAY_RATE)) {
+                mockGoAwayRate = Double.parseDouble(arg.split("=", 2)[1]);
+            } else if (arg.startsWith(Constants.Arguments.MOCK_TOKEN_TTL_IN_SECONDS)) {
+                mockTokenTtlInSeconds = Integer.parseInt(arg.split("=", 2)[1]);
             } else if (arg.startsWith(Constants.Arguments.API_TEST_METHOD)) {
                 apiTestMethod = arg.split("=", 2)[1];
+            } else if (arg.startsWith(Constants.Arguments.ASSETS_DIRECTORY)) {
+                assetsDirectory = Optional.of(Path.of(arg.split("=", 2)[1]));
             } else if (arg.startsWith(Constants.Arguments.API_TEST_URI)) {
                 apiTestUri = arg.split("=", 2)[1];
             }
         }
 
-        return new ProgramArguments(auth, cleanup, performLoadTest, workflowsPerSecond, durationInSeconds, apiTestMethod, apiTestUri);
+        var profile = ArrivalProfile.parse(arrivalProfile, workflowsPerSecond, durationInSeconds, rampTo, stepIncrement, stepIntervalInSeconds);
+
+        if (stepIntervalInSeconds <= 0) {
+            throw new IllegalArgumentException(STR."\{Constants.Arguments.STEP_INTERVAL_IN_SECONDS} must be positive");
+        }
+
+        // The arrival scheduler waits out a rate of zero until it rises again or the run ends, so a rate that stays at zero
+        // with no duration would never end. Ramps and steps may start from zero; a ramp always has a duration.
+        if (workflowsPerSecond <= 0 && (profile instanceof ArrivalProfile.Constant || profile instanceof ArrivalProfile.Poisson)) {
+            throw new IllegalArgumentException(STR."\{Constants.Arguments.WORKFLOWS_PER_SECOND} must be positive");
+        }
+
+        if (profile instanceof ArrivalProfile.Step && durationInSeconds.isEmpty() && (stepIncrement < 0 || (stepIncrement == 0 && workflowsPerSecond <= 0))) {
+            throw new IllegalArgumentException(STR."\{Constants.Arguments.DURATION_IN_SECONDS} is required for a step arrival profile whose rate falls to zero");
+        }
+
+        if (coordinator.isPresent() && worker.isPresent()) {
+            throw new IllegalArgumentException(STR."\{Constants.Arguments.COORDINATOR} and \{Constants.Arguments.WORKER} can't be used together");
+        }
+
+        if (findCapacity && (coordinator.isPresent() || worker.isPresent())) {
+            throw new IllegalArgumentException(STR."\{Constants.Arguments.FIND_CAPACITY} can't be used in a distributed load test");
+        }
+
+        if (transport.pollInterval().isNegative() || transport.pollInterval().isZero() || transport.pollConcurrency() <= 0) {
+            throw new IllegalArgumentException(STR."\{Constants.Arguments.POLL_INTERVAL_IN_MILLIS} and \{Constants.Arguments.POLL_CONCURRENCY} must be positive");
+        }
+
+        if (reportIntervalInSeconds <= 0) {
+            throw new IllegalArgumentException(STR."\{Constants.Arguments.REPORT_INTERVAL_IN_SECONDS} must be positive");
+        }
+
+        var mock = Optional.<MockConductorServer.Options>empty();
+
+        if (mockConductor) {
+            mock = Optional.of(new MockConductorServer.Options(
+                    mockPort,
+                    mockLatency,
+                    mockExecuteLatency.orElse(mockLatency),
+                    mockSignalLatency.orElse(mockLatency),
+                    mockErrorRate,
+                    mockErrorStatus,
+                    mockGoAwayRate,
+                    Duration.ofSeconds(mockTokenTtlInSeconds)
+            ));
+        }
+
+        return new ProgramArguments(auth, cleanup, cleanupConcurrency, performLoadTest || findCapacity, workflowsPerSecond, durationInSeconds, profile, simulator, endPolicy, scenarios, timeCompression, transport, coordinator, worker, findCapacity ? Optional.of(capacity) : Optional.empty(), journal, report, Duration.ofSeconds(reportIntervalInSeconds), apiTestMethod, apiTestUri, port, assetsDirectory, httpClients, retryPolicy, circuitBreaker, admission, logOverflow, mock);
     }
 }
@@ -0,0 +1,180 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Pre-encoded pieces of the requests sent on the load test's hot path. Everything that's the same for every kiosk order
+// (endpoint URIs, the method and uri workflow inputs, the signal bodies) is encoded once up front, so building a request
+// only has to splice in the sequence number or workflow ID. The bodies and URIs of each WorkflowTransport are all here.
+public class RequestTemplates {
+    // The sequence input has always been sent as a JSON string containing a quoted number, e.g. "\"42\"", which is kept
+    // as-is so the workflow sees exactly the same input as before.
+    private static final byte[] SEQUENCE_PREFIX = ",\"sequence\":\"\\\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEQUENCE_SUFFIX = "\\\"\"}}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] INPUT_SUFFIX = "}}".getBytes(StandardCharsets.UTF_8);
+
+    // The start call's body is the input on its own, so it's one brace short of the execute call's.
+    private static final byte[] START_SEQUENCE_SUFFIX = "\\\"\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper json;
+
+    // {"input":{"method":"...","uri":"..."
+    private final byte[] executePrefix;
+    private final byte[] executeWithoutInput;
+    private final URI executeUri;
+
+    // {"method":"...","uri":"..." and, for the callback transport, ,"callbackUri":"..."
+    private final byte[] startPrefix;
+    private final URI startUri;
+
+    private final String endpoint;
+    private final String signalUriPrefix;
+    private final String signalUriSuffix;
+
+    private final Map<String, byte[]> actions;
+
+    public RequestTemplates(ObjectMapper json, String endpoint, String workflowName, int workflowVersion, String method, String uri) throws JsonProcessingException {
+        this(json, endpoint, workflowName, workflowVersion, method, uri, WorkflowTransport.Consistency.SYNCHRONOUS, null);
+    }
+
+    // `callbackUri` is passed to workflows started with #startBody, if not null.
+    public RequestTemplates(ObjectMapper json, String endpoint, String workflowName, int workflowVersion, String method, String uri,
+                            WorkflowTransport.Consistency consistency, URI callbackUri) throws JsonProcessingException {
+        this.json = json;
+
+        var input = STR."\"method\":\{json.writeValueAsString(method)},\"uri\":\{json.writeValueAsString(uri)}";
+
+        this.executePrefix = STR."{\"input\":{\{input}".getBytes(StandardCharsets.UTF_8);
+        this.executeWithoutInput = concat(this.executePrefix, INPUT_SUFFIX);
+
+        // String Templates are a preview feature. See https://openjdk.org/jeps/459
+        this.executeUri = URI.create(STR."\{endpoint}/api/workflow/execute/\{workflowName}/\{workflowVersion}?waitForSeconds=3&returnStrategy=BLOCKING_TASK_INPUT&consistency=\{consistency}");
+
+        if (callbackUri != null) {
+            input += STR.",\"callbackUri\":\{json.writeValueAsString(callbackUri.toString())}";
+        }
+
+        this.startPrefix = STR."{\{input}".getBytes(StandardCharsets.UTF_8);
+        this.startUri = URI.create(STR."\{endpoint}/api/workflow/\{workflowName}?version=\{workflowVersion}");
+
+        this.endpoint = endpoint;
+        this.signalUriPrefix = STR."\{endpoint}/api/tasks/";
+        this.signalUriSuffix = "/COMPLETED/signal/sync?returnStrategy=BLOCKING_TASK_INPUT";
+
+        this.actions = Map.of(
+                "AddItem", this.encodeAction("AddItem"),
+                "RemoveItem", this.encodeAction("RemoveItem"),
+                "Checkout", this.encodeAction("Checkout")
+        );
+    }
+
+    private byte[] encodeAction(String action) throws JsonProcessingException {
+        return this.json.writeValueAsBytes(Map.of("action", action));
+    }
+
+    public URI executeUri() {
+        return this.executeUri;
+    }
+
+    // The body for a workflow started with only the method and uri inputs. Shared; callers must not modify it.
+    public byte[] executeBody() {
+        return this.executeWithoutInput;
+    }
+
+    // The body for a load test workflow, allocating nothing but the returned array.
+    public byte[] executeBody(long sequence) {
+        return withSequence(this.executePrefix, sequence, SEQUENCE_SUFFIX);
+    }
+
+    // Starts a workflow without waiting for it, see WorkflowTransport. Answered with the bare workflow ID.
+    public URI startUri() {
+        return this.startUri;
+    }
+
+    // The body for a load test workflow started with #startUri: the same input as #executeBody, plus the callback URI if
+    // there is one.
+    public byte[] startBody(long sequence) {
+        return withSequence(this.startPrefix, sequence, START_SEQUENCE_SUFFIX);
+    }
+
+    private static byte[] withSequence(byte[] prefix, long sequence, byte[] suffix) {
+        if (sequence < 0) {
+            throw new IllegalArgumentException("sequence must not be negative");
+        }
+
+        var digits = digits(sequence);
+        var body = new byte[prefix.length + SEQUENCE_PREFIX.length + digits + suffix.length];
+        var position = 0;
+
+        System.arraycopy(prefix, 0, body, position, prefix.length);
+        position += prefix.length;
+
+        System.arraycopy(SEQUENCE_PREFIX, 0, body, position, SEQUENCE_PREFIX.length);
+        position += SEQUENCE_PREFIX.length;
+
+        for (int i = position + digits - 1; i >= position; --i) {
+            body[i] = (byte) ('0' + sequence % 10);
+            sequence /= 10;
+        }
+
+        position += digits;
+
+        System.arraycopy(suffix, 0, body, position, suffix.length);
+
+        return body;
+    }
+
+    public URI signalUri(String workflowId) {
+        return URI.create(this.signalUriPrefix + workflowId + this.signalUriSuffix);
+    }
+
+    // Completes the workflow's blocking task and returns as soon as Conductor has accepted it, without waiting for the
+    // workflow to move on.
+    public URI asyncSignalUri(String workflowId) {
+        return URI.create(STR."\{this.signalUriPrefix}\{workflowId}/COMPLETED/signal");
+    }
+
+    // The workflow's status and tasks, for the polling transports to see whether it has reached its next yield.
+    public URI statusUri(String workflowId) {
+        return URI.create(STR."\{this.endpoint}/api/workflow/\{workflowId}?includeTasks=true");
+    }
+
+    // Shared for the known kiosk actions; callers must not modify it.
+    public byte[] signalBody(String action) {
+        var body = this.actions.get(action);
+
+        if (body != null) {
+            return body;
+        }
+
+        try {
+            return this.encodeAction(action);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static int digits(long value) {
+        var digits = 1;
+
+        while (value >= 10) {
+            value /= 10;
+            ++digits;
+        }
+
+        return digits;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        var result = new byte[a.length + b.length];
+
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+
+        return result;
+    }
+}
@@ -0,0 +1,268 @@
+package io.orkes.kiosk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+// Every call to the Conductor server goes through here, so that retries, the retry budget and the circuit breaker are
+// shared by the whole application rather than reimplemented (or forgotten) at each call site.
+//
+// A call rejected with a 401 is re-sent once with a fresh token from the TokenManager, if there is one.
+public class ResilientHttpClient {
+    private final HttpClientPool clients;
+    private final Executor executor;
+    private final RetryPolicy policy;
+    private final CircuitBreaker breaker;
+    private final TokenManager tokens;
+
+    private final Map<CallType, LongAdder> calls = new EnumMap<>(CallType.class);
+    private final Map<CallType, LongAdder> retries = new EnumMap<>(CallType.class);
+    // Per attempt, keyed by status code or NO_RESPONSE.
+    private final Map<CallType, Map<Integer, LongAdder>> responses = new EnumMap<>(CallType.class);
+    private final Map<CallType, LatencyHistogram> durations = new EnumMap<>(CallType.class);
+    private final LongAdder totalCalls = new LongAdder();
+    private final LongAdder totalRetries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    public ResilientHttpClient(HttpClientPool clients, Executor executor, RetryPolicy policy, CircuitBreaker breaker, TokenManager tokens) {
+        this.clients = clients;
+        this.executor = executor;
+        this.policy = policy;
+        this.breaker = breaker;
+        this.tokens = tokens;
+
+        for (var type : CallType.values()) {
+            this.calls.put(type, new LongAdder());
+            this.retries.put(type, new LongAdder());
+            this.responses.put(type, new ConcurrentHashMap<>());
+            this.durations.put(type, new LatencyHistogram());
+        }
+    }
+
+    public <T> HttpResponse<T> send(CallType type, HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        this.calls.get(type).increment();
+        this.totalCalls.increment();
+
+        var reauthenticated = false;
+
+        for (int attempt = 1; ; ++attempt) {
+            if (!this.breaker.tryAcquire()) {
+                throw new CircuitBreaker.OpenException();
+            }
+
+            HttpResponse<T> response = null;
+            IOException error = null;
+            var start = System.nanoTime();
+
+            try {
+                response = this.clients.send(request, handler);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            this.record(type, start, response);
+
+            if (!reauthenticated && this.isUnauthorized(type, request, response)) {
+                // The server answered, so the attempt still counts as a success for the breaker.
+                this.breaker.onSuccess();
+                discard(response);
+                request = withToken(request, this.tokens.onUnauthorized(token(request)));
+                reauthenticated = true;
+                continue;
+            }
+
+            var outcome = this.complete(type, attempt, response, error);
+
+            if (outcome == null) {
+                if (error != null) {
+                    throw error;
+                }
+
+                return response;
+            }
+
+            // Thread#sleep plays well with Project Loom's Virtual Threads, so this doesn't actually block a system thread.
+            Thread.sleep(this.policy.backoff(attempt, response));
+        }
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(CallType type, HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        this.calls.get(type).increment();
+        this.totalCalls.increment();
+
+        return this.attemptAsync(type, request, handler, 1, false);
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> attemptAsync(CallType type, HttpRequest request, HttpResponse.BodyHandler<T> handler, int attempt, boolean reauthenticated) {
+        if (!this.breaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(new CircuitBreaker.OpenException());
+        }
+
+        var start = System.nanoTime();
+
+        return this.clients.sendAsync(request, handler).handle((response, error) -> {
+            var cause = error instanceof CompletionException ? error.getCause() : error;
+
+            this.record(type, start, response);
+
+            if (!reauthenticated && this.isUnauthorized(type, request, response)) {
+                this.breaker.onSuccess();
+                discard(response);
+
+                return this.tokens.onUnauthorizedAsync(token(request))
+                        .thenCompose(token -> this.attemptAsync(type, withToken(request, token), handler, attempt + 1, true));
+            }
+
+            if (this.complete(type, attempt, response, cause) == null) {
+                return error != null ? CompletableFuture.<HttpResponse<T>>failedFuture(cause) : CompletableFuture.completedFuture(response);
+            }
+
+            var delay = this.policy.backoff(attempt, response);
+
+            return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS, this.executor))
+                    .thenCompose(_ -> this.attemptAsync(type, request, handler, attempt + 1, reauthenticated));
+        }).thenCompose(Function.identity());
+    }
+
+    // Records the outcome of an attempt, returning null if the result should be handed back to the caller as-is, or the
+    // outcome if the call should be retried.
+    private RetryPolicy.Outcome complete(CallType type, int attempt, HttpResponse<?> response, Throwable error) {
+        var outcome = RetryPolicy.classify(response, error);
+
+        if (outcome == RetryPolicy.Outcome.SUCCESS) {
+            this.breaker.onSuccess();
+            return null;
+        }
+
+        this.breaker.onFailure();
+
+        var retryable = outcome == RetryPolicy.Outcome.RETRYABLE
+                || (outcome == RetryPolicy.Outcome.RETRYABLE_IF_IDEMPOTENT && type.idempotent);
+
+        if (!retryable || attempt >= this.policy.maxAttempts()) {
+            return null;
+        }
+
+        if (this.totalRetries.sum() >= RetryPolicy.MIN_RETRY_BUDGET + this.policy.budgetRatio() * this.totalCalls.sum()) {
+            this.budgetExhausted.increment();
+            return null;
+        }
+
+        discard(response);
+
+        this.retries.get(type).increment();
+        this.totalRetries.increment();
+
+        return outcome;
+    }
+
+    private void record(CallType type, long startNanos, HttpResponse<?> response) {
+        this.durations.get(type).recordNanos(System.nanoTime() - startNanos);
+
+        var status = response != null ? response.statusCode() : PhaseLatencies.NO_RESPONSE;
+
+        this.responses.get(type).computeIfAbsent(status, _ -> new LongAdder()).increment();
+    }
+
+    private boolean isUnauthorized(CallType type, HttpRequest request, HttpResponse<?> response) {
+        return this.tokens != null
+                && type != CallType.TOKEN
+                && response != null
+                && response.statusCode() == 401
+                && token(request) != null;
+    }
+
+    private static String token(HttpRequest request) {
+        return request.headers().firstValue(TokenManager.HEADER).orElse(null);
+    }
+
+    private static HttpRequest withToken(HttpRequest request, String token) {
+        return HttpRequest.newBuilder(request, (_, _) -> true).setHeader(TokenManager.HEADER, token).build();
+    }
+
+    // The response won't be handed to anyone, so drain it to release its connection.
+    private static void discard(HttpResponse<?> response) {
+        if (response != null && response.body() instanceof InputStream body) {
+            try {
+                ResponseBodies.discard(body);
+            } catch (IOException _) {
+                // Nothing useful to do; the connection will be closed instead of reused.
+            }
+        }
+    }
+
+    public HttpClientPool clients() {
+        return this.clients;
+    }
+
+    public long retries(CallType type) {
+        return this.retries.get(type).sum();
+    }
+
+    public void register(Metrics metrics) {
+        metrics.register("conductor_responses_total", "Attempted calls to Conductor by call type and HTTP status (0 if there was no response).", Metrics.Type.COUNTER, samples -> {
+            for (var type : CallType.values()) {
+                for (var entry : new TreeMap<>(this.responses.get(type)).entrySet()) {
+                    samples.add(Metrics.labels("call", label(type), "status", entry.getKey()), entry.getValue().sum());
+                }
+            }
+        });
+
+        metrics.register("conductor_request_duration_seconds", "Duration of each attempted call to Conductor.", Metrics.Type.HISTOGRAM, samples -> {
+            for (var type : CallType.values()) {
+                samples.histogram(Metrics.labels("call", label(type)), this.durations.get(type));
+            }
+        });
+
+        metrics.register("conductor_retries_total", "Calls to Conductor that were retried, by call type.", Metrics.Type.COUNTER, samples -> {
+            for (var type : CallType.values()) {
+                samples.add(Metrics.labels("call", label(type)), this.retries(type));
+            }
+        });
+
+        metrics.register("conductor_retry_budget_exhausted_total", "Retries skipped because the retry budget was used up.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.budgetExhausted.sum()));
+        metrics.register("conductor_circuit_breaker_open", "Whether the circuit breaker is open (1), half open (0.5) or closed (0).", Metrics.Type.GAUGE,
+                samples -> samples.add(switch (this.breaker.state()) {
+                    case CLOSED -> 0;
+                    case HALF_OPEN -> 0.5;
+                    case OPEN -> 1;
+                }));
+        metrics.register("conductor_circuit_breaker_opened_total", "Times the circuit breaker has opened.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.breaker.timesOpened()));
+        metrics.register("conductor_circuit_breaker_rejected_total", "Calls shed by the open circuit breaker.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.breaker.rejected()));
+
+        this.clients.register(metrics);
+    }
+
+    private static String label(CallType type) {
+        return type.name().toLowerCase();
+    }
+
+    public void log(Logger log) {
+        var summary = new StringBuilder("Retries:");
+
+        for (var type : CallType.values()) {
+            summary.append(STR." \{type}=\{this.retries(type)}/\{this.calls.get(type).sum()}");
+        }
+
+        log.info(summary.toString());
+
+        if (this.budgetExhausted.sum() > 0 || this.breaker.timesOpened() > 0) {
+            log.warning(STR."Retry budget exhausted \{this.budgetExhausted.sum()} times, circuit breaker opened \{this.breaker.timesOpened()} times and shed \{this.breaker.rejected()} calls.");
+        }
+    }
+}
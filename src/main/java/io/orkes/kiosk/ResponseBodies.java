@@ -0,0 +1,129 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Helpers for making sure upstream response bodies are always consumed. A response body that's never read or closed
+// holds its connection (and buffers) until it's garbage collected, so under load the client ends up opening new
+// connections instead of reusing idle ones.
+//
+// Callers that only need the status and headers should send with HttpResponse.BodyHandlers#discarding, which drains the
+// body as it arrives. The helpers here are for callers that do need (some of) the body.
+public class ResponseBodies {
+    private static final JsonFactory FACTORY = JsonFactory.builder().build();
+
+    private static final int RELAY_BUFFER_SIZE = 8192;
+
+    // Reads a top-level string field from a JSON body without building a tree, stopping at the first match. The rest of
+    // the body is drained and the stream closed either way, so the connection can go back to the pool.
+    public static Optional<String> extractField(InputStream body, String field) throws IOException {
+        try (body; var parser = FACTORY.createParser(body)) {
+            String value = null;
+
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                JsonToken token;
+
+                while ((token = parser.nextToken()) != null && token != JsonToken.END_OBJECT) {
+                    if (token == JsonToken.FIELD_NAME && field.equals(parser.currentName())) {
+                        parser.nextToken();
+                        value = parser.getValueAsString();
+                        break;
+                    }
+
+                    // Skip over the value of any other field, including nested objects and arrays.
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            }
+
+            discard(body);
+
+            return Optional.ofNullable(value);
+        }
+    }
+
+    // Drains and closes a body the caller has no use for.
+    public static void discard(InputStream body) throws IOException {
+        try (body) {
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    public static void discard(HttpResponse<InputStream> response) throws IOException {
+        discard(response.body());
+    }
+
+    // Sends an upstream response to a client as-is: the status, the content type and the body, which is streamed straight
+    // from the upstream connection to the exchange rather than being buffered in between.
+    public static void relay(HttpResponse<InputStream> response, HttpExchange exchange) throws IOException {
+        relay(response, List.of(exchange));
+    }
+
+    // The same for several clients waiting on one upstream response, e.g. coalesced requests. Each chunk of the body is
+    // written to every client as it arrives. A client that has gone away is dropped without affecting the others; the
+    // exchanges are all closed once the body has been relayed.
+    public static void relay(HttpResponse<InputStream> response, List<HttpExchange> exchanges) throws IOException {
+        var clients = new ArrayList<OutputStream>(exchanges.size());
+
+        try (var body = response.body()) {
+            var status = response.statusCode();
+            var length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+
+            // HttpExchange uses -1 for "no body" and 0 for "unknown length, send it chunked".
+            if (length == 0 || status == 204 || status == 304) {
+                length = -1;
+            } else if (length < 0) {
+                length = 0;
+            }
+
+            for (var exchange : exchanges) {
+                try {
+                    response.headers().firstValue("Content-Type")
+                            .ifPresent(contentType -> exchange.getResponseHeaders().set("Content-Type", contentType));
+
+                    exchange.sendResponseHeaders(status, length);
+                    clients.add(exchange.getResponseBody());
+                } catch (IOException e) {
+                    exchange.close();
+                }
+            }
+
+            var buffer = new byte[RELAY_BUFFER_SIZE];
+            int read;
+
+            while ((read = body.read(buffer)) >= 0) {
+                for (var iterator = clients.iterator(); iterator.hasNext(); ) {
+                    var os = iterator.next();
+
+                    try {
+                        os.write(buffer, 0, read);
+                    } catch (IOException e) {
+                        iterator.remove();
+                        closeQuietly(os);
+                    }
+                }
+            }
+        } finally {
+            for (var os : clients) {
+                closeQuietly(os);
+            }
+        }
+    }
+
+    private static void closeQuietly(OutputStream os) {
+        try {
+            os.close();
+        } catch (IOException ignored) {
+            // The client has gone away; there's nobody left to tell.
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+// Serves /resume-workflow/ for the kiosk UI: POST {"workflowId": "...", "action": "AddItem"} signals the workflow's wait
+// task and answers with whatever Conductor returns, which with the BLOCKING_TASK_INPUT return strategy is the input of
+// the next task the kiosk is waiting on.
+//
+// The signal is sent asynchronously and the exchange completed from the response callback, so a resume waiting on
+// Conductor holds no thread, just the exchange and a future. The response body is streamed from the upstream connection
+// to the client rather than buffered.
+//
+// Signals for a workflow that already has one in flight are coalesced: a double-tap on the kiosk joins the first signal
+// and gets the same response, instead of advancing the workflow twice. A different action while one is in flight is
+// refused with a 409, since it can't be known which of the two the user meant.
+public class ResumeWorkflowHandler implements HttpHandler {
+    // Workflow IDs are UUIDs; anything else could rewrite the signal URI.
+    private static final Pattern WORKFLOW_ID = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+    // Actions end up in a header as well as the signal body.
+    private static final Pattern ACTION = Pattern.compile("[A-Za-z]{1,32}");
+    private static final String DEFAULT_ACTION = "AddItem";
+
+    private enum Join {
+        JOINED,
+        CONFLICT,
+        CLOSED
+    }
+
+    // One upstream signal and every client waiting for its response.
+    private final class Signal {
+        private final String workflowId;
+        private final String action;
+
+        // Guarded by `this`.
+        private final List<HttpExchange> exchanges = new ArrayList<>(1);
+        private boolean closed;
+
+        Signal(String workflowId, String action, HttpExchange exchange) {
+            this.workflowId = workflowId;
+            this.action = action;
+            this.exchanges.add(exchange);
+        }
+
+        synchronized Join join(HttpExchange exchange, String action) {
+            if (this.closed) {
+                return Join.CLOSED;
+            }
+
+            if (!this.action.equals(action)) {
+                return Join.CONFLICT;
+            }
+
+            this.exchanges.add(exchange);
+
+            return Join.JOINED;
+        }
+
+        void send() {
+            var application = ResumeWorkflowHandler.this.application;
+
+            try {
+                application.resumeWorkflowAsync(application.templates.signalUri(this.workflowId), this.action, HttpResponse.BodyHandlers.ofInputStream())
+                        .whenComplete(this::onResponse);
+            } catch (RuntimeException e) {
+                this.onResponse(null, e);
+            }
+        }
+
+        private void onResponse(HttpResponse<InputStream> response, Throwable error) {
+            // Out of the map first, so that nobody can find this signal once it stops accepting joiners.
+            ResumeWorkflowHandler.this.pending.remove(this.workflowId, this);
+
+            List<HttpExchange> exchanges;
+
+            synchronized (this) {
+                this.closed = true;
+                exchanges = List.copyOf(this.exchanges);
+            }
+
+            try {
+                if (error == null) {
+                    ResponseBodies.relay(response, exchanges);
+                    return;
+                }
+
+                var cause = error instanceof CompletionException ? error.getCause() : error;
+
+                ResumeWorkflowHandler.this.log.log(Level.WARNING, STR."Failed to resume workflow \{this.workflowId}: \{cause.getMessage()}", cause);
+
+                for (var exchange : exchanges) {
+                    // The circuit breaker sheds load for a few seconds at a time; anything else is Conductor failing.
+                    if (cause instanceof CircuitBreaker.OpenException) {
+                        exchange.getResponseHeaders().set("Retry-After", "5");
+                        respondQuietly(exchange, 503);
+                    } else {
+                        respondQuietly(exchange, 502);
+                    }
+                }
+            } catch (IOException e) {
+                ResumeWorkflowHandler.this.log.log(Level.WARNING, STR."Failed to relay the response for workflow \{this.workflowId}.", e);
+            } finally {
+                for (var exchange : exchanges) {
+                    exchange.close();
+                }
+            }
+        }
+    }
+
+    private final Logger log = Logging.getLogger(ResumeWorkflowHandler.class);
+
+    private final KioskApplication application;
+
+    private final Map<String, Signal> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    ResumeWorkflowHandler(KioskApplication application) {
+        this.application = application;
+    }
+
+    void register(Metrics metrics) {
+        metrics.register("kiosk_resume_requests_total", "Requests to resume a workflow.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.requests.sum()));
+        metrics.register("kiosk_resume_coalesced_total", "Resume requests that joined a signal already in flight for the same workflow.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.coalesced.sum()));
+        metrics.register("kiosk_resume_conflicts_total", "Resume requests refused because a different action was in flight for the same workflow.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.conflicts.sum()));
+        metrics.register("kiosk_resume_pending", "Workflows with a signal in flight.", Metrics.Type.GAUGE,
+                samples -> samples.add(this.pending.size()));
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            respond(exchange, 405);
+            exchange.close();
+            return;
+        }
+
+        this.requests.increment();
+
+        JsonNode body;
+
+        try {
+            body = this.application.json.readTree(exchange.getRequestBody());
+        } catch (JsonProcessingException e) {
+            body = MissingNode.getInstance();
+        }
+
+        var workflowId = body.path("workflowId").asText();
+        var action = body.path("action").asText(DEFAULT_ACTION);
+
+        if (!WORKFLOW_ID.matcher(workflowId).matches() || !ACTION.matcher(action).matches()) {
+            respond(exchange, 400);
+            exchange.close();
+            return;
+        }
+
+        // The exchange is left open on return; the signal's response callback completes it.
+        while (true) {
+            var signal = new Signal(workflowId, action, exchange);
+            var existing = this.pending.putIfAbsent(workflowId, signal);
+
+            if (existing == null) {
+                signal.send();
+                return;
+            }
+
+            switch (existing.join(exchange, action)) {
+                case JOINED -> {
+                    this.coalesced.increment();
+                    return;
+                }
+                case CONFLICT -> {
+                    this.conflicts.increment();
+                    respond(exchange, 409);
+                    exchange.close();
+                    return;
+                }
+                // It has just been answered and is on its way out of the map; try again.
+                case CLOSED -> Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    // For answering several clients, where one having gone away mustn't keep the others from their answer.
+    private static void respondQuietly(HttpExchange exchange, int status) {
+        try {
+            respond(exchange, status);
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.orkes.kiosk;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+// How failed calls to the Conductor server are retried.
+//
+// Retries back off exponentially from `baseDelay` up to `maxDelay`, with full jitter so that thousands of kiosks that
+// failed at the same moment don't retry at the same moment too. Across a run, retries are capped at `budgetRatio` times
+// the number of calls made (plus a small allowance for the start of the run), so a failing server sees at most a fixed
+// multiple of the normal load rather than every caller retrying in lockstep.
+public record RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, double budgetRatio) {
+    // Retries that are always allowed regardless of the budget, so that a blip at the start of a run isn't fatal.
+    static final long MIN_RETRY_BUDGET = 100;
+
+    public enum Outcome {
+        SUCCESS,
+        // The request definitely wasn't processed, so it's safe to retry any call.
+        RETRYABLE,
+        // The request may or may not have been processed; only idempotent calls can be retried.
+        RETRYABLE_IF_IDEMPOTENT,
+        FAILURE
+    }
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(5, Duration.ofMillis(50), Duration.ofSeconds(5), 0.2);
+    }
+
+    public Duration backoff(int attempt) {
+        var cap = Math.min(this.maxDelay.toNanos(), this.baseDelay.toNanos() << Math.min(attempt - 1, 30));
+
+        return Duration.ofNanos(ThreadLocalRandom.current().nextLong(Math.max(1, cap)));
+    }
+
+    // Honours a `Retry-After` header given in seconds, which Conductor sends alongside 429 and 503 responses.
+    public Duration backoff(int attempt, HttpResponse<?> response) {
+        var backoff = this.backoff(attempt);
+
+        if (response == null) {
+            return backoff;
+        }
+
+        var retryAfter = response.headers().firstValue("Retry-After");
+
+        if (retryAfter.isPresent()) {
+            try {
+                var requested = Duration.ofSeconds(Long.parseLong(retryAfter.get().trim()));
+
+                return requested.compareTo(this.maxDelay) > 0 ? this.maxDelay : (requested.compareTo(backoff) > 0 ? requested : backoff);
+            } catch (NumberFormatException _) {
+                // HTTP dates aren't worth supporting here, just use the normal backoff.
+            }
+        }
+
+        return backoff;
+    }
+
+    public static Outcome classify(HttpResponse<?> response, Throwable error) {
+        if (error != null) {
+            return classify(error);
+        }
+
+        return switch (response.statusCode()) {
+            case 429, 503 -> Outcome.RETRYABLE;
+            case 502, 504 -> Outcome.RETRYABLE_IF_IDEMPOTENT;
+            default -> response.statusCode() >= 500 ? Outcome.FAILURE : Outcome.SUCCESS;
+        };
+    }
+
+    private static Outcome classify(Throwable error) {
+        if (HttpUtils.isCausedByGoAway(error)) {
+            return Outcome.RETRYABLE;
+        }
+
+        var io = false;
+
+        for (var cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CircuitBreaker.OpenException) {
+                return Outcome.FAILURE;
+            }
+
+            // Never got as far as sending the request.
+            if (cause instanceof HttpConnectTimeoutException || cause instanceof ConnectException) {
+                return Outcome.RETRYABLE;
+            }
+
+            // The caller set a deadline for the whole call, retrying would blow through it.
+            if (cause instanceof HttpTimeoutException) {
+                return Outcome.FAILURE;
+            }
+
+            io |= cause instanceof IOException;
+        }
+
+        return io ? Outcome.RETRYABLE_IF_IDEMPOTENT : Outcome.FAILURE;
+    }
+}
@@ -0,0 +1,288 @@
+package io.orkes.kiosk;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Records every step of every simulated kiosk order to a binary file, so that a run can be analysed afterwards (see
+// JournalReport) in far more detail than the logged summary, however long it ran.
+//
+// Records are fixed-width and written straight into a memory-mapped file: a writer claims the next slot with a single
+// atomic increment and fills it in with absolute puts, so recording takes no lock and allocates nothing. The file is
+// mapped in segments of a million records as it grows; only mapping a new segment synchronizes, once per segment.
+//
+// Layout (little-endian):
+//
+//   header (64 bytes)  magic, version, record size, wall clock time of the run's start (epoch millis), record count
+//   record (40 bytes)  sequence, intended start, actual start, end (the three times in nanoseconds since the run's
+//                      start), HTTP status (0 if there was no response), phase + 1, failure reason + 1 (0 if none)
+//
+// The record count is written on close. If the process died first, a reader takes every slot whose phase is set.
+public class RunJournal implements AutoCloseable {
+    static final long MAGIC = 0x4C4E524A4B534B4FL; // "OKSKJRNL" in little-endian order.
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 40;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 8;
+    static final int RECORD_SIZE_OFFSET = 12;
+    static final int START_EPOCH_MILLIS_OFFSET = 16;
+    static final int COUNT_OFFSET = 24;
+
+    static final int SEQUENCE_OFFSET = 0;
+    static final int INTENDED_START_OFFSET = 8;
+    static final int START_OFFSET = 16;
+    static final int END_OFFSET = 24;
+    static final int STATUS_OFFSET = 32;
+    static final int PHASE_OFFSET = 34;
+    static final int FAILURE_OFFSET = 35;
+
+    static final int SEGMENT_BITS = 20;
+    static final int SEGMENT_RECORDS = 1 << SEGMENT_BITS;
+    static final long SEGMENT_SIZE = (long) SEGMENT_RECORDS * RECORD_SIZE;
+
+    // About four billion records, far beyond any run's disk budget.
+    private static final int MAX_SEGMENTS = 4096;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final AtomicReferenceArray<MappedByteBuffer> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+
+    // System#nanoTime at the start of the run; every time in the journal is relative to it.
+    private final long startNanos;
+
+    private final AtomicLong next = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed;
+
+    public RunJournal(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        this.startNanos = System.nanoTime();
+
+        this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        this.header.order(ByteOrder.LITTLE_ENDIAN);
+        this.header.putLong(MAGIC_OFFSET, MAGIC);
+        this.header.putInt(VERSION_OFFSET, VERSION);
+        this.header.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+        this.header.putLong(START_EPOCH_MILLIS_OFFSET, System.currentTimeMillis());
+        this.header.putLong(COUNT_OFFSET, 0);
+    }
+
+    public Path path() {
+        return this.path;
+    }
+
+    // Records one step. The times are System#nanoTime values; `status` is PhaseLatencies#NO_RESPONSE if the step got no
+    // response, and `failure` is null unless this step ended the order.
+    public void append(long sequence, PhaseLatencies.Phase phase, int status, long intendedStartNanos, long startNanos, long endNanos,
+                       LoadTest.FailureReason failure) {
+        if (this.closed) {
+            return;
+        }
+
+        var slot = this.next.getAndIncrement();
+        var segment = (int) (slot >>> SEGMENT_BITS);
+
+        if (segment >= MAX_SEGMENTS) {
+            this.dropped.increment();
+            return;
+        }
+
+        MappedByteBuffer buffer;
+
+        try {
+            buffer = this.segment(segment);
+        } catch (IOException e) {
+            this.dropped.increment();
+            return;
+        }
+
+        var offset = (int) (slot & (SEGMENT_RECORDS - 1)) * RECORD_SIZE;
+
+        buffer.putLong(offset + SEQUENCE_OFFSET, sequence);
+        buffer.putLong(offset + INTENDED_START_OFFSET, intendedStartNanos - this.startNanos);
+        buffer.putLong(offset + START_OFFSET, startNanos - this.startNanos);
+        buffer.putLong(offset + END_OFFSET, endNanos - this.startNanos);
+        buffer.putShort(offset + STATUS_OFFSET, (short) status);
+        buffer.put(offset + FAILURE_OFFSET, (byte) (failure == null ? 0 : failure.ordinal() + 1));
+        // Last, so that a slot that was never finished reads as empty.
+        buffer.put(offset + PHASE_OFFSET, (byte) (phase.ordinal() + 1));
+    }
+
+    private MappedByteBuffer segment(int index) throws IOException {
+        var segment = this.segments.get(index);
+
+        if (segment != null) {
+            return segment;
+        }
+
+        synchronized (this.segments) {
+            segment = this.segments.get(index);
+
+            if (segment == null) {
+                // Mapping past the end of the file grows it; the new pages are zero, i.e. empty slots.
+                segment = this.channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + index * SEGMENT_SIZE, SEGMENT_SIZE);
+                segment.order(ByteOrder.LITTLE_ENDIAN);
+
+                this.segments.set(index, segment);
+            }
+
+            return segment;
+        }
+    }
+
+    // Records written so far, including any still being filled in.
+    public long records() {
+        return Math.min(this.next.get(), (long) MAX_SEGMENTS * SEGMENT_RECORDS);
+    }
+
+    // Records that couldn't be written, because the journal was full or its file couldn't be grown.
+    public long dropped() {
+        return this.dropped.sum();
+    }
+
+    // A step still being written when the journal is closed reads as an empty slot.
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+
+        var count = this.records();
+
+        this.header.putLong(COUNT_OFFSET, count);
+
+        for (int i = 0; i < MAX_SEGMENTS; ++i) {
+            var segment = this.segments.get(i);
+
+            if (segment != null) {
+                segment.force();
+            }
+        }
+
+        this.header.force();
+
+        // The last segment stays mapped in full, rather than truncating the file under a writer that got its slot just
+        // before the journal was closed. Readers go by the record count, and the untouched pages are holes on most file
+        // systems, so it costs little if any disk space.
+        this.channel.close();
+    }
+
+    // Streams a journal's records, one segment mapped at a time, so that reading even a journal far larger than the heap
+    // allocates nothing per record. The accessors read the current record, i.e. the one #next last moved to.
+    static class Reader implements AutoCloseable {
+        private static final PhaseLatencies.Phase[] PHASES = PhaseLatencies.Phase.values();
+        private static final LoadTest.FailureReason[] FAILURE_REASONS = LoadTest.FailureReason.values();
+
+        private final FileChannel channel;
+        private final long startEpochMillis;
+        private final long count;
+
+        private MappedByteBuffer segment;
+        private int segmentIndex = -1;
+        private long slot = -1;
+        private int offset;
+
+        Reader(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+            if (this.channel.size() < HEADER_SIZE) {
+                this.channel.close();
+                throw new IOException(STR."\{path} is too short to be a run journal");
+            }
+
+            var header = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            if (header.getLong(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION || header.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+                this.channel.close();
+                throw new IOException(STR."\{path} is not a version \{VERSION} run journal");
+            }
+
+            this.startEpochMillis = header.getLong(START_EPOCH_MILLIS_OFFSET);
+
+            var count = header.getLong(COUNT_OFFSET);
+
+            // Not closed cleanly, so every slot in the file is a candidate.
+            this.count = count > 0 ? count : (this.channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        }
+
+        long startEpochMillis() {
+            return this.startEpochMillis;
+        }
+
+        // Moves to the next record, skipping empty slots; false at the end of the journal.
+        boolean next() throws IOException {
+            while (++this.slot < this.count) {
+                var index = (int) (this.slot >>> SEGMENT_BITS);
+
+                if (index != this.segmentIndex) {
+                    var position = HEADER_SIZE + index * SEGMENT_SIZE;
+                    var size = Math.min(SEGMENT_SIZE, this.channel.size() - position);
+
+                    this.segment = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                    this.segment.order(ByteOrder.LITTLE_ENDIAN);
+                    this.segmentIndex = index;
+                }
+
+                this.offset = (int) (this.slot & (SEGMENT_RECORDS - 1)) * RECORD_SIZE;
+
+                if (this.offset + RECORD_SIZE > this.segment.limit()) {
+                    return false;
+                }
+
+                if (this.segment.get(this.offset + PHASE_OFFSET) != 0) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        long sequence() {
+            return this.segment.getLong(this.offset + SEQUENCE_OFFSET);
+        }
+
+        PhaseLatencies.Phase phase() {
+            return PHASES[this.segment.get(this.offset + PHASE_OFFSET) - 1];
+        }
+
+        // The times are in nanoseconds since the start of the run.
+        long intendedStartNanos() {
+            return this.segment.getLong(this.offset + INTENDED_START_OFFSET);
+        }
+
+        long startNanos() {
+            return this.segment.getLong(this.offset + START_OFFSET);
+        }
+
+        long endNanos() {
+            return this.segment.getLong(this.offset + END_OFFSET);
+        }
+
+        int status() {
+            return this.segment.getShort(this.offset + STATUS_OFFSET);
+        }
+
+        // Null unless this step ended its order.
+        LoadTest.FailureReason failure() {
+            var failure = this.segment.get(this.offset + FAILURE_OFFSET);
+
+            return failure == 0 ? null : FAILURE_REASONS[failure - 1];
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+// The kinds of kiosk order the load test simulates. -scenarios=<name> picks a bundled set from /scenarios/<name>.json, or
+// a file of the same shape if <name> is a path:
+//
+//   {
+//     "timeCompression": 1,
+//     "scenarios": [
+//       {
+//         "name": "browse",
+//         "weight": 3,                                      share of the orders started
+//         "thinkTime": "lognormal:2000:0.5",                a LatencyDistribution, in milliseconds
+//         "steps": { "min": 2, "max": 8 },                  actions taken before checking out
+//         "actions": { "AddItem": 6, "RemoveItem": 2, "Checkout": 1 }
+//       }
+//     ]
+//   }
+//
+// Each step of an order waits out a think time and then signals an action picked by weight. Checkout ends the order and
+// isn't picked before `min` steps; after `max` steps the order checks out straight away, without thinking, as the fixed
+// order of three items and a checkout always has ("default" is just that).
+//
+// An order has to check out within the kiosk_order workflow's timeoutSeconds, which is also its deadline in the load
+// test (see OrderScope), so a scenario's `max` steps of think time should fit well within it; the load test warns about
+// any that don't on average.
+//
+// Every think time is divided by `timeCompression` (or -time-compression), which turns a realistic mix into a stress test:
+// the same orders at ten times the pace put ten times the signals on the server for the same number of kiosks.
+public record Scenarios(List<Scenario> scenarios, double timeCompression) {
+    public static final String DEFAULT = "default";
+
+    // An action of an order, with the think time to wait out before signalling it.
+    public record Action(String name, PhaseLatencies.Phase phase, long thinkNanos) {}
+
+    public record Scenario(
+            int index,
+            String name,
+            double weight,
+            LatencyDistribution thinkTime,
+            int minSteps,
+            int maxSteps,
+            double addItem,
+            double removeItem,
+            double checkout,
+            double timeCompression
+    ) {
+        // The action to take after `steps` steps (not counting the start).
+        public Action next(int steps) {
+            if (steps >= this.maxSteps) {
+                return new Action("Checkout", PhaseLatencies.Phase.CHECKOUT, 0);
+            }
+
+            var checkout = steps < this.minSteps ? 0 : this.checkout;
+            var pick = ThreadLocalRandom.current().nextDouble() * (this.addItem + this.removeItem + checkout);
+            var thinkNanos = Math.round(this.thinkTime.sampleNanos() / this.timeCompression);
+
+            if (pick < this.removeItem) {
+                return new Action("RemoveItem", PhaseLatencies.Phase.REMOVE_ITEM, thinkNanos);
+            }
+
+            if (pick < this.removeItem + checkout) {
+                return new Action("Checkout", PhaseLatencies.Phase.CHECKOUT, thinkNanos);
+            }
+
+            // Also when there's nothing else to pick, e.g. a scenario that only checks out, but not before `min` steps.
+            return new Action("AddItem", PhaseLatencies.Phase.ADD_ITEM, thinkNanos);
+        }
+
+        // How long an order takes at most, on average, not counting the server's latency.
+        public Duration meanDuration() {
+            return Duration.ofNanos(Math.round(this.maxSteps * this.thinkTime.meanMillis() * 1e6 / this.timeCompression));
+        }
+    }
+
+    // The fixed order with the given think time, for the benchmarks.
+    public static Scenarios fixed(Duration thinkTime) {
+        var millis = thinkTime.toNanos() / 1e6;
+
+        return new Scenarios(List.of(new Scenario(0, DEFAULT, 1, new LatencyDistribution.Constant(millis), 3, 3, 1, 0, 0, 1)), 1);
+    }
+
+    public static Scenarios load(ObjectMapper json, String name, Optional<Double> timeCompression) throws IOException {
+        var path = Path.of(name);
+
+        if (Files.isRegularFile(path)) {
+            try (var source = Files.newInputStream(path)) {
+                return parse(json.readTree(source), timeCompression);
+            }
+        }
+
+        try (var source = Scenarios.class.getResourceAsStream(STR."/scenarios/\{name}.json")) {
+            if (source == null) {
+                throw new IllegalArgumentException(STR."No scenarios file or bundled scenarios named \{name}");
+            }
+
+            return parse(json.readTree(source), timeCompression);
+        }
+    }
+
+    private static Scenarios parse(JsonNode root, Optional<Double> timeCompressionOverride) {
+        var timeCompression = timeCompressionOverride.orElse(root.path("timeCompression").asDouble(1));
+
+        if (!(timeCompression > 0)) {
+            throw new IllegalArgumentException("The time compression factor must be positive");
+        }
+
+        var scenarios = new ArrayList<Scenario>();
+
+        for (var node : root.path("scenarios")) {
+            var name = node.path("name").asText(null);
+
+            if (name == null) {
+                throw new IllegalArgumentException("Every scenario needs a name");
+            }
+
+            // Results are reported, and merged across workers, by name.
+            if (scenarios.stream().anyMatch(other -> other.name().equals(name))) {
+                throw new IllegalArgumentException(STR."More than one scenario named \{name}");
+            }
+
+            var actions = node.path("actions");
+
+            for (var entries = actions.fieldNames(); entries.hasNext(); ) {
+                var action = entries.next();
+
+                if (!action.equals("AddItem") && !action.equals("RemoveItem") && !action.equals("Checkout")) {
+                    throw new IllegalArgumentException(STR."Scenario \{name} has action \{action}, expected AddItem, RemoveItem or Checkout");
+                }
+            }
+
+            var scenario = new Scenario(
+                    scenarios.size(),
+                    name,
+                    node.path("weight").asDouble(1),
+                    LatencyDistribution.parse(node.path("thinkTime").asText("constant:3000")),
+                    node.path("steps").path("min").asInt(0),
+                    node.path("steps").path("max").asInt(3),
+                    actions.path("AddItem").asDouble(0),
+                    actions.path("RemoveItem").asDouble(0),
+                    actions.path("Checkout").asDouble(0),
+                    timeCompression);
+
+            if (scenario.weight() < 0 || scenario.addItem() < 0 || scenario.removeItem() < 0 || scenario.checkout() < 0) {
+                throw new IllegalArgumentException(STR."Scenario \{name} has a negative weight");
+            }
+
+            if (scenario.minSteps() < 0 || scenario.maxSteps() < scenario.minSteps()) {
+                throw new IllegalArgumentException(STR."Scenario \{name} must have 0 <= steps.min <= steps.max");
+            }
+
+            if (scenario.maxSteps() > 0 && scenario.addItem() + scenario.removeItem() + scenario.checkout() <= 0) {
+                throw new IllegalArgumentException(STR."Scenario \{name} has no actions to take");
+            }
+
+            scenarios.add(scenario);
+        }
+
+        if (scenarios.stream().mapToDouble(Scenario::weight).sum() <= 0) {
+            throw new IllegalArgumentException("At least one scenario must have a positive weight");
+        }
+
+        return new Scenarios(List.copyOf(scenarios), timeCompression);
+    }
+
+    // Picks the scenario of a new order, by weight.
+    public Scenario pick() {
+        if (this.scenarios.size() == 1) {
+            return this.scenarios.getFirst();
+        }
+
+        var pick = ThreadLocalRandom.current().nextDouble() * this.scenarios.stream().mapToDouble(Scenario::weight).sum();
+
+        for (var scenario : this.scenarios) {
+            pick -= scenario.weight();
+
+            if (pick < 0) {
+                return scenario;
+            }
+        }
+
+        return this.scenarios.getLast();
+    }
+
+    // The longest an order of any scenario takes on average, e.g. for how long a rate change takes to settle.
+    public Duration longestOrder() {
+        return this.scenarios.stream()
+                .filter(scenario -> scenario.weight() > 0)
+                .map(Scenario::meanDuration)
+                .max(Duration::compareTo)
+                .orElse(Duration.ZERO);
+    }
+
+    public String describe() {
+        var total = this.scenarios.stream().mapToDouble(Scenario::weight).sum();
+        var mix = this.scenarios.stream()
+                .filter(scenario -> scenario.weight() > 0)
+                .map(scenario -> String.format("%s %.0f%%", scenario.name(), scenario.weight() * 100 / total))
+                .collect(Collectors.joining(", "));
+
+        return this.timeCompression == 1 ? mix : String.format("%s, think time compressed %.1fx", mix, this.timeCompression);
+    }
+}
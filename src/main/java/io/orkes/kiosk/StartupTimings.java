@@ -0,0 +1,66 @@
+package io.orkes.kiosk;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// How long each phase of startup took, so that a slow pod start can be pinned on the JVM, fetching a token, publishing
+// the workflows or whatever else. Logged once the server is up, and exported as kiosk_startup_phase_seconds.
+//
+//     var phaseStart = System.nanoTime();
+//     ...
+//     phaseStart = timings.record("some_phase", phaseStart);
+//
+// Phases may overlap (e.g. each workflow being published alongside the others), so they needn't add up to the total.
+class StartupTimings {
+    private final long startNanos = System.nanoTime();
+
+    // Guarded by `this`. Kept in the order the phases finished.
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    StartupTimings() {
+        // Everything before main: starting the JVM and loading the classes that got us here.
+        ProcessHandle.current().info().startInstant().ifPresent(start ->
+                this.phases.put("jvm", Duration.between(start, Instant.now()).toNanos()));
+    }
+
+    // Records a phase that started at `startNanos` and ends now, returning now as the start of the next phase.
+    long record(String phase, long startNanos) {
+        var now = System.nanoTime();
+
+        synchronized (this) {
+            this.phases.put(phase, now - startNanos);
+        }
+
+        return now;
+    }
+
+    void log(Logger log) {
+        var line = new StringBuilder(256);
+
+        synchronized (this) {
+            var total = System.nanoTime() - this.startNanos + this.phases.getOrDefault("jvm", 0L);
+
+            line.append(String.format("Started in %d ms:", TimeUnit.NANOSECONDS.toMillis(total)));
+
+            for (var entry : this.phases.entrySet()) {
+                line.append(String.format(" %s=%d", entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue())));
+            }
+        }
+
+        log.info(line.toString());
+    }
+
+    void register(Metrics metrics) {
+        metrics.register("kiosk_startup_phase_seconds", "How long each phase of startup took.", Metrics.Type.GAUGE, samples -> {
+            synchronized (this) {
+                for (var entry : this.phases.entrySet()) {
+                    samples.add(Metrics.labels("phase", entry.getKey()), entry.getValue() / 1e9);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,269 @@
+package io.orkes.kiosk;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+// Serves the kiosk UI from memory. Every asset is read once, hashed for a strong ETag and, where it helps, gzipped ahead
+// of time, so a fleet of kiosks reloading the page costs a map lookup and usually a bodiless 304.
+//
+// Assets come from the /ui resources directory (whether that's a directory or inside the application jar) unless a
+// directory is given with -assets-dir. Nothing outside it is served, so neither the workflow definitions nor anything a
+// dependency bundles at the resources root can be fetched; within it, only files with a known web content type are.
+// POST /assets/reload from the local machine re-reads everything without a restart.
+public class StaticAssets implements HttpHandler {
+    private record Variant(byte[] body, String etag) {}
+
+    private record Asset(String contentType, String cacheControl, Variant identity, Variant gzip) {}
+
+    private static final Map<String, String> CONTENT_TYPES = Map.ofEntries(
+            Map.entry("html", "text/html; charset=utf-8"),
+            Map.entry("css", "text/css; charset=utf-8"),
+            Map.entry("js", "text/javascript; charset=utf-8"),
+            Map.entry("mjs", "text/javascript; charset=utf-8"),
+            Map.entry("json", "application/json"),
+            Map.entry("webmanifest", "application/manifest+json"),
+            Map.entry("txt", "text/plain; charset=utf-8"),
+            Map.entry("svg", "image/svg+xml"),
+            Map.entry("png", "image/png"),
+            Map.entry("jpg", "image/jpeg"),
+            Map.entry("jpeg", "image/jpeg"),
+            Map.entry("gif", "image/gif"),
+            Map.entry("webp", "image/webp"),
+            Map.entry("ico", "image/x-icon"),
+            Map.entry("woff2", "font/woff2")
+    );
+
+    // Compressing tiny files or already-compressed formats gains nothing.
+    private static final int MIN_COMPRESSIBLE_SIZE = 256;
+
+    // Pages are always revalidated so a new UI rolls out immediately, which is cheap thanks to the ETag. Everything else
+    // can be cached for a while.
+    private static final String PAGE_CACHE_CONTROL = "no-cache";
+    private static final String ASSET_CACHE_CONTROL = "public, max-age=3600";
+
+    private static final String RESOURCE_DIRECTORY = "/ui";
+
+    private final Logger log = Logging.getLogger(StaticAssets.class);
+
+    private final Optional<Path> directory;
+
+    private volatile Map<String, Asset> assets = Map.of();
+
+    public StaticAssets(Optional<Path> directory) throws IOException {
+        this.directory = directory;
+        this.reload();
+    }
+
+    public void reload() throws IOException {
+        var loaded = new HashMap<String, Asset>();
+
+        if (this.directory.isPresent()) {
+            load(this.directory.get(), loaded);
+        } else {
+            var index = KioskApplication.class.getResource(STR."\{RESOURCE_DIRECTORY}/index.html");
+
+            if (index == null) {
+                throw new IllegalStateException(STR."\{RESOURCE_DIRECTORY}/index.html not found");
+            }
+
+            try {
+                var uri = index.toURI();
+
+                if (uri.getScheme().equals("jar")) {
+                    try (FileSystem jar = FileSystems.newFileSystem(uri, Map.of())) {
+                        load(jar.getPath(RESOURCE_DIRECTORY), loaded);
+                    }
+                } else {
+                    load(Path.of(uri).getParent(), loaded);
+                }
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+
+        this.assets = Map.copyOf(loaded);
+
+        var bytes = loaded.values().stream().mapToLong(asset -> asset.identity().body().length).sum();
+
+        this.log.info(STR."Loaded \{loaded.size()} static assets (\{bytes} bytes).");
+    }
+
+    private static void load(Path root, Map<String, Asset> assets) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                var name = root.relativize(file).toString().replace('\\', '/');
+                var contentType = CONTENT_TYPES.get(extension(name));
+
+                if (!Files.isRegularFile(file) || contentType == null) {
+                    continue;
+                }
+
+                var body = Files.readAllBytes(file);
+                var hash = hash(body);
+                var identity = new Variant(body, STR."\"\{hash}\"");
+                Variant gzip = null;
+
+                if (body.length >= MIN_COMPRESSIBLE_SIZE && (!contentType.startsWith("image/") || contentType.equals("image/svg+xml"))) {
+                    var compressed = gzip(body);
+
+                    if (compressed.length < body.length) {
+                        gzip = new Variant(compressed, STR."\"\{hash}-gzip\"");
+                    }
+                }
+
+                var cacheControl = contentType.startsWith("text/html") ? PAGE_CACHE_CONTROL : ASSET_CACHE_CONTROL;
+
+                assets.put(name, new Asset(contentType, cacheControl, identity, gzip));
+            }
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var path = exchange.getRequestURI().getPath();
+            var method = exchange.getRequestMethod();
+
+            if (path.equals("/assets/reload") && method.equals("POST")) {
+                this.handleReload(exchange);
+                return;
+            }
+
+            var asset = this.assets.get(path.equals("/") ? "index.html" : path.substring(1));
+
+            if (asset == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            var variant = asset.gzip() != null && acceptsGzip(exchange) ? asset.gzip() : asset.identity();
+            var headers = exchange.getResponseHeaders();
+
+            headers.set("Content-Type", asset.contentType());
+            headers.set("Cache-Control", asset.cacheControl());
+            headers.set("ETag", variant.etag());
+
+            if (asset.gzip() != null) {
+                headers.set("Vary", "Accept-Encoding");
+            }
+
+            if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), variant.etag())) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            if (variant == asset.gzip()) {
+                headers.set("Content-Encoding", "gzip");
+            }
+
+            if (method.equals("HEAD")) {
+                headers.set("Content-Length", Integer.toString(variant.body().length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, variant.body().length);
+
+            try (var os = exchange.getResponseBody()) {
+                os.write(variant.body());
+            }
+        }
+    }
+
+    private void handleReload(HttpExchange exchange) throws IOException {
+        InetAddress address = exchange.getRemoteAddress().getAddress();
+
+        if (!address.isLoopbackAddress()) {
+            exchange.sendResponseHeaders(403, -1);
+            return;
+        }
+
+        this.reload();
+
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private static boolean acceptsGzip(HttpExchange exchange) {
+        var accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+        if (accept == null) {
+            return false;
+        }
+
+        for (var coding : accept.split(",")) {
+            var parts = coding.split(";");
+
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (var candidate : ifNoneMatch.split(",")) {
+            var value = candidate.trim();
+
+            if (value.equals("*") || value.equals(etag) || value.equals(STR."W/\{etag}")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String extension(String name) {
+        var dot = name.lastIndexOf('.');
+
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase();
+    }
+
+    private static String hash(byte[] body) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(body);
+
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        var buffer = new ByteArrayOutputStream(body.length);
+
+        try (var gzip = new GZIPOutputStream(buffer)) {
+            gzip.write(body);
+        }
+
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,171 @@
+package io.orkes.kiosk;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// A hashed timer wheel for scheduling huge numbers of short, imprecise delays (such as kiosk think time) without a thread
+// or a heap-ordered queue entry per delay.
+//
+// Scheduling just appends to a lock-free queue. A single thread advances the wheel one tick at a time, moves newly
+// scheduled timeouts into the slot for their deadline and hands every expired task to the executor. Timeouts further
+// away than one revolution stay in their slot until the revolution they're due in. Tasks fire up to one tick late.
+//
+// A cancelled timeout lets go of its task straight away, but stays in its slot (and counts as pending) until the wheel
+// next passes it, rather than being searched for.
+public class TimerWheel implements AutoCloseable {
+    public static final class Timeout {
+        private final long deadlineNanos;
+        private volatile Runnable task;
+
+        private Timeout(long deadlineNanos, Runnable task) {
+            this.deadlineNanos = deadlineNanos;
+            this.task = task;
+        }
+
+        // The task won't be run, unless it's already being handed to the executor.
+        public void cancel() {
+            this.task = null;
+        }
+    }
+
+    private final Executor executor;
+    private final long tickNanos;
+    private final int mask;
+    private final long startNanos;
+
+    // Only touched by the wheel thread.
+    private final ArrayDeque<Timeout>[] slots;
+    private long tick;
+
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final LongAdder pending = new LongAdder();
+    private final Thread thread;
+
+    private volatile boolean closed;
+    private volatile long maxLatenessNanos;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(Executor executor, Duration tick, int slots) {
+        if (Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("slots must be a power of two");
+        }
+
+        this.executor = executor;
+        this.tickNanos = tick.toNanos();
+        this.mask = slots - 1;
+        this.slots = (ArrayDeque<Timeout>[]) new ArrayDeque<?>[slots];
+
+        for (int i = 0; i < slots; ++i) {
+            this.slots[i] = new ArrayDeque<>();
+        }
+
+        this.startNanos = System.nanoTime();
+        this.thread = Thread.ofPlatform().name("timer-wheel").daemon().start(this::run);
+    }
+
+    // A 10ms tick is far finer than the seconds of think time being simulated, and 512 slots cover about five seconds
+    // per revolution so that most timeouts are placed once and never looked at again until they fire.
+    public TimerWheel(Executor executor) {
+        this(executor, Duration.ofMillis(10), 512);
+    }
+
+    public Timeout schedule(Duration delay, Runnable task) {
+        if (this.closed) {
+            throw new IllegalStateException("Timer wheel is closed");
+        }
+
+        var timeout = new Timeout(System.nanoTime() + delay.toNanos(), task);
+
+        this.pending.increment();
+        this.scheduled.add(timeout);
+
+        return timeout;
+    }
+
+    // Timeouts scheduled but not yet fired or, if cancelled, dropped.
+    public long pending() {
+        return this.pending.sum();
+    }
+
+    public Duration maxLateness() {
+        return Duration.ofNanos(this.maxLatenessNanos);
+    }
+
+    private void run() {
+        while (!this.closed) {
+            var tickEnd = this.startNanos + (this.tick + 1) * this.tickNanos;
+            long remaining;
+
+            while ((remaining = tickEnd - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+
+                if (this.closed) {
+                    return;
+                }
+            }
+
+            this.transferScheduled();
+            this.expire(this.slots[(int) (this.tick & this.mask)], tickEnd);
+
+            ++this.tick;
+        }
+    }
+
+    private void transferScheduled() {
+        Timeout timeout;
+
+        while ((timeout = this.scheduled.poll()) != null) {
+            // Anything already due goes in the current slot so it fires this tick.
+            var due = Math.max(this.tick, (timeout.deadlineNanos - this.startNanos) / this.tickNanos);
+
+            this.slots[(int) (due & this.mask)].add(timeout);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> slot, long tickEnd) {
+        for (int i = slot.size(); i > 0; --i) {
+            var timeout = slot.poll();
+            var task = timeout.task;
+
+            // Due in a later revolution.
+            if (task != null && timeout.deadlineNanos > tickEnd) {
+                slot.add(timeout);
+                continue;
+            }
+
+            this.pending.decrement();
+
+            if (task == null) {
+                continue;
+            }
+
+            var lateness = System.nanoTime() - timeout.deadlineNanos;
+
+            if (lateness > this.maxLatenessNanos) {
+                this.maxLatenessNanos = lateness;
+            }
+
+            this.executor.execute(task);
+        }
+    }
+
+    // Pending timeouts are dropped.
+    @Override
+    public void close() {
+        this.closed = true;
+
+        LockSupport.unpark(this.thread);
+
+        try {
+            this.thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+// Keeps the Conductor token fresh for the lifetime of the application.
+//
+// Conductor tokens are JWTs, so the expiry is read from the token itself and a background virtual thread fetches a new
+// one a while before it runs out. Request builders read the current token with a single volatile read. If a request is
+// rejected with a 401 anyway (the token was revoked, or the clocks disagree), the refresh is single-flight: the first
+// caller fetches a new token and everyone else who saw the same stale token waits for that one.
+public class TokenManager {
+    @FunctionalInterface
+    public interface Fetcher {
+        String fetch() throws IOException, InterruptedException;
+    }
+
+    // Conductor reads the token from this header rather than `Authorization`.
+    static final String HEADER = "X-Authorization";
+
+    private record Token(String value, Instant expiry) {}
+
+    // Refresh once this fraction of the token's lifetime has passed, leaving the rest as slack for a slow or failing
+    // token endpoint.
+    private static final double REFRESH_AT = 0.8;
+    private static final Duration MIN_REFRESH_DELAY = Duration.ofSeconds(1);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final Logger log = Logging.getLogger(TokenManager.class);
+    private final ObjectMapper json = new ObjectMapper();
+
+    private final Fetcher fetcher;
+    private final ExecutorService executor;
+
+    private volatile Token token;
+    private final AtomicReference<CompletableFuture<Token>> refreshing = new AtomicReference<>();
+
+    private final LatencyHistogram refreshLatency = new LatencyHistogram();
+    private final LongAdder refreshFailures = new LongAdder();
+    private final LongAdder unauthorized = new LongAdder();
+
+    private volatile boolean stopped;
+    private Thread refresher;
+
+    public TokenManager(Fetcher fetcher, ExecutorService executor) {
+        this.fetcher = fetcher;
+        this.executor = executor;
+    }
+
+    // Fetches the first token, then keeps it fresh in the background if it says when it expires.
+    public void start() throws IOException, InterruptedException {
+        this.token = this.fetch();
+
+        if (this.token.expiry() == null) {
+            this.log.info("Token has no expiry, it won't be refreshed.");
+            return;
+        }
+
+        this.refresher = Thread.ofVirtual().name("token-refresher").start(this::refreshLoop);
+    }
+
+    public void stop() {
+        this.stopped = true;
+
+        if (this.refresher != null) {
+            this.refresher.interrupt();
+        }
+    }
+
+    public String current() {
+        return this.token.value();
+    }
+
+    private void refreshLoop() {
+        while (!this.stopped) {
+            var token = this.token;
+
+            if (token.expiry() == null) {
+                return;
+            }
+
+            var lifetime = Duration.between(Instant.now(), token.expiry());
+            var delay = Duration.ofMillis((long) (lifetime.toMillis() * REFRESH_AT));
+
+            try {
+                // Thread#sleep plays well with Project Loom's Virtual Threads, so this doesn't actually block a system thread.
+                Thread.sleep(delay.compareTo(MIN_REFRESH_DELAY) > 0 ? delay : MIN_REFRESH_DELAY);
+
+                // Somebody may have refreshed it after a 401 in the meantime.
+                if (this.token == token) {
+                    this.refresh(token.value()).join();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (CompletionException e) {
+                this.log.warning(STR."Failed to refresh token, retrying in \{RETRY_DELAY.toSeconds()}s: \{e.getCause()}");
+
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException _) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Called when a request made with `stale` was rejected. Returns the token to retry with, which is only fetched if no
+    // one else has already replaced `stale`.
+    public String onUnauthorized(String stale) throws IOException, InterruptedException {
+        this.unauthorized.increment();
+
+        try {
+            return this.refresh(stale).join().value();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+
+            throw e;
+        }
+    }
+
+    public CompletableFuture<String> onUnauthorizedAsync(String stale) {
+        this.unauthorized.increment();
+
+        return this.refresh(stale).thenApply(Token::value);
+    }
+
+    private CompletableFuture<Token> refresh(String stale) {
+        while (true) {
+            var token = this.token;
+
+            if (!token.value().equals(stale)) {
+                return CompletableFuture.completedFuture(token);
+            }
+
+            var inFlight = this.refreshing.get();
+
+            if (inFlight != null) {
+                return inFlight;
+            }
+
+            var refresh = new CompletableFuture<Token>();
+
+            if (!this.refreshing.compareAndSet(null, refresh)) {
+                continue;
+            }
+
+            // The token may have been replaced between reading it and winning the race.
+            if (this.token != token) {
+                this.refreshing.set(null);
+                refresh.complete(this.token);
+                return refresh;
+            }
+
+            this.executor.execute(() -> {
+                try {
+                    this.token = this.fetch();
+                    refresh.complete(this.token);
+                } catch (Exception e) {
+                    refresh.completeExceptionally(e);
+                } finally {
+                    this.refreshing.set(null);
+                }
+            });
+
+            return refresh;
+        }
+    }
+
+    private Token fetch() throws IOException, InterruptedException {
+        var start = System.nanoTime();
+
+        try {
+            var value = this.fetcher.fetch();
+
+            this.refreshLatency.recordNanos(System.nanoTime() - start);
+
+            return new Token(value, this.expiry(value));
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            this.refreshFailures.increment();
+            throw e;
+        }
+    }
+
+    // Reads the `exp` claim of a JWT, or returns null for anything that doesn't look like one.
+    private Instant expiry(String value) {
+        var parts = value.split("\\.");
+
+        if (parts.length < 2) {
+            return null;
+        }
+
+        try {
+            var claims = this.json.readTree(Base64.getUrlDecoder().decode(parts[1]));
+            var exp = claims.get("exp");
+
+            return exp != null && exp.canConvertToLong() ? Instant.ofEpochSecond(exp.asLong()) : null;
+        } catch (IOException | IllegalArgumentException _) {
+            return null;
+        }
+    }
+
+    public LatencyHistogram refreshLatency() {
+        return this.refreshLatency;
+    }
+
+    public long refreshFailures() {
+        return this.refreshFailures.sum();
+    }
+
+    public void register(Metrics metrics) {
+        metrics.register("conductor_token_fetch_duration_seconds", "Time taken to fetch a Conductor token.", Metrics.Type.HISTOGRAM,
+                samples -> samples.histogram(this.refreshLatency));
+        metrics.register("conductor_token_fetch_failures_total", "Failed attempts to fetch a Conductor token.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.refreshFailures()));
+        metrics.register("conductor_unauthorized_total", "Calls rejected with a 401 and re-sent with a fresh token.", Metrics.Type.COUNTER,
+                samples -> samples.add(this.unauthorized.sum()));
+    }
+
+    public void log(Logger log) {
+        var latency = this.refreshLatency;
+
+        log.info(STR."Token: \{latency.count()} fetched (p50 \{latency.valueAtPercentile(50) / 1000}ms, max \{latency.maxMicros() / 1000}ms), \{this.refreshFailures()} failed, \{this.unauthorized.sum()} requests rejected with 401.");
+    }
+}
@@ -0,0 +1,164 @@
+package io.orkes.kiosk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.TreeMap;
+
+// The workflow definitions bundled in src/main/resources/workflows.
+//
+// Definitions are normalized at build time by the normalizeWorkflows task in build.gradle, which runs #main: each is
+// parsed from JSON5, stripped of the fields Conductor manages itself and written back out as compact JSON with sorted
+// keys. Startup then only reads the result, and posts its bytes as they are. Run from an IDE, without the build, the
+// JSON5 sources are normalized the same way on the fly.
+//
+// Conductor adds fields of its own to a stored definition (timestamps, owner, defaults of fields left out), so a
+// definition is compared with the server's copy on the fields it sets itself: anything else the server returns is ignored.
+public class WorkflowDefinitions {
+    // Set by Conductor whenever a definition is stored, so they'd make every copy look different.
+    private static final Set<String> SERVER_FIELDS = Set.of("createTime", "updateTime", "createdBy", "updatedBy", "ownerApp");
+
+    private static final String SOURCE_EXTENSION = ".json5";
+    private static final String NORMALIZED_EXTENSION = ".json";
+
+    public record Definition(String name, int version, JsonNode tree, byte[] body, String hash) {
+        // Whether Conductor's copy of the definition, as returned by GET /api/metadata/workflow/{name}, is this one.
+        public boolean matches(JsonNode current) {
+            return WorkflowDefinitions.hash(canonical(project(current, this.tree))).equals(this.hash);
+        }
+
+        // How long Conductor lets a run of the workflow take before timing it out, zero if it doesn't.
+        public Duration timeout() {
+            return Duration.ofSeconds(this.tree.path("timeoutSeconds").asLong());
+        }
+    }
+
+    private WorkflowDefinitions() {}
+
+    // Loads a bundled definition by resource name, e.g. `kiosk_order`.
+    public static Definition load(ObjectMapper json, String name) throws IOException {
+        try (var normalized = WorkflowDefinitions.class.getResourceAsStream(STR."/workflows/\{name}\{NORMALIZED_EXTENSION}")) {
+            if (normalized != null) {
+                return definition(json, json.readTree(normalized));
+            }
+        }
+
+        try (var source = WorkflowDefinitions.class.getResourceAsStream(STR."/workflows/\{name}\{SOURCE_EXTENSION}")) {
+            if (source == null) {
+                throw new IllegalArgumentException(STR."No workflow definition named \{name}");
+            }
+
+            return definition(json, normalize(json, source));
+        }
+    }
+
+    private static Definition definition(ObjectMapper json, JsonNode tree) throws IOException {
+        return new Definition(tree.get("name").asText(), tree.get("version").asInt(), tree, json.writeValueAsBytes(tree), hash(tree));
+    }
+
+    static JsonNode normalize(ObjectMapper json, InputStream source) throws IOException {
+        var tree = json.readTree(source);
+
+        if (!(tree instanceof ObjectNode definition)) {
+            throw new IOException("A workflow definition must be a JSON object");
+        }
+
+        definition.remove(SERVER_FIELDS);
+
+        return canonical(definition);
+    }
+
+    // The same tree with every object's fields in sorted order, so that equal definitions serialize to equal bytes.
+    private static JsonNode canonical(JsonNode node) {
+        if (node instanceof ObjectNode object) {
+            var sorted = new TreeMap<String, JsonNode>();
+
+            object.fields().forEachRemaining(field -> sorted.put(field.getKey(), canonical(field.getValue())));
+
+            var result = object.objectNode();
+
+            result.setAll(sorted);
+
+            return result;
+        }
+
+        if (node instanceof ArrayNode array) {
+            var result = array.arrayNode(array.size());
+
+            array.forEach(element -> result.add(canonical(element)));
+
+            return result;
+        }
+
+        return node;
+    }
+
+    // Conductor's copy cut down to the fields `local` has, recursively.
+    private static JsonNode project(JsonNode current, JsonNode local) {
+        if (local instanceof ObjectNode object && current instanceof ObjectNode server) {
+            var result = server.objectNode();
+            var names = new ArrayList<String>();
+
+            object.fieldNames().forEachRemaining(names::add);
+
+            for (var name : names) {
+                if (server.has(name)) {
+                    result.set(name, project(server.get(name), object.get(name)));
+                }
+            }
+
+            return result;
+        }
+
+        if (local instanceof ArrayNode array && current instanceof ArrayNode server && array.size() == server.size()) {
+            var result = server.arrayNode(server.size());
+
+            for (int i = 0; i < server.size(); ++i) {
+                result.add(project(server.get(i), array.get(i)));
+            }
+
+            return result;
+        }
+
+        // Different shapes or lengths, or a plain value: compared as they are.
+        return current;
+    }
+
+    private static String hash(JsonNode node) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(node.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Build time: normalizes every JSON5 definition in args[0] into args[1]. See the normalizeWorkflows task.
+    public static void main(String[] args) throws IOException {
+        var json = new ObjectMapper();
+        var output = Files.createDirectories(Path.of(args[1]));
+
+        try (var sources = Files.newDirectoryStream(Path.of(args[0]), STR."*\{SOURCE_EXTENSION}")) {
+            for (var source : sources) {
+                var name = source.getFileName().toString();
+                var target = output.resolve(name.substring(0, name.length() - SOURCE_EXTENSION.length()) + NORMALIZED_EXTENSION);
+
+                try (var input = Files.newInputStream(source)) {
+                    json.writeValue(target.toFile(), normalize(json, input));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.orkes.kiosk;
+
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+// How the load test's kiosk orders start their workflow and signal its yield task with each action. A step lasts until
+// the workflow is waiting at its next yield task (or has finished), however many calls it takes the transport to find
+// out; comparing transports at the same rate shows which gives the best step latency for the connections it uses.
+//
+//   sync      execute and signal/sync, each of which holds its connection while Conductor runs the workflow up to the
+//             next yield task. One call per step. The default, and the only one the consistency level applies to.
+//   poll      start and signal calls that return as soon as Conductor has accepted them, after which a shared poller
+//             looks up every workflow still on its way to a yield task, see PollingTransport.
+//   callback  as poll, but the workflow is expected to notify a listener on this process once it gets there, so only
+//             workflows that haven't within a poll interval are polled.
+//
+// The kiosk UI's endpoints always use the sync calls, since they hand Conductor's response back to the browser.
+public interface WorkflowTransport extends AutoCloseable {
+    enum Kind {
+        SYNC,
+        POLL,
+        CALLBACK
+    }
+
+    // How durably Conductor must have stored the workflow before the execute call returns.
+    enum Consistency {
+        SYNCHRONOUS,
+        DURABLE,
+        REGION_DURABLE
+    }
+
+    record Options(
+            Kind kind,
+            Consistency consistency,
+            Duration pollInterval,
+            // At most this many status lookups are in flight at once.
+            int pollConcurrency,
+            // Where workflows should notify the callback transport; this process's own /transport-callback/ by default.
+            Optional<URI> callbackUri
+    ) {
+        public static Options defaults() {
+            return new Options(Kind.SYNC, Consistency.SYNCHRONOUS, Duration.ofMillis(100), 64, Optional.empty());
+        }
+    }
+
+    // Where a step left the workflow. `statusCode` is that of the call that decided the step; `workflowId` and
+    // `workflowStatus` are null if it didn't say. `taskId` identifies the yield task the workflow is waiting at, if the
+    // transport knows it.
+    record Step(int statusCode, String workflowId, String workflowStatus, String taskId) {}
+
+    // Starts a load test workflow, tagged with its sequence number.
+    CompletableFuture<Step> start(long sequence);
+
+    // Signals the yield task the workflow is waiting at with `action`. `taskId` is that task's, as the last step that
+    // reported one said, or null.
+    CompletableFuture<Step> signal(String workflowId, String taskId, String action);
+
+    default void register(Metrics metrics) {}
+
+    default void log(Logger log) {}
+
+    @Override
+    default void close() {}
+
+    static WorkflowTransport create(KioskApplication application, Options options) {
+        return switch (options.kind()) {
+            case SYNC -> new Sync(application);
+            case POLL -> new PollingTransport(application, options, false);
+            case CALLBACK -> new PollingTransport(application, options, true);
+        };
+    }
+
+    final class Sync implements WorkflowTransport {
+        private final KioskApplication application;
+
+        Sync(KioskApplication application) {
+            this.application = application;
+        }
+
+        @Override
+        public CompletableFuture<Step> start(long sequence) {
+            return this.application.executeWorkflowAsync(sequence, HttpResponse.BodyHandlers.discarding()).thenApply(Sync::step);
+        }
+
+        @Override
+        public CompletableFuture<Step> signal(String workflowId, String taskId, String action) {
+            var signalUri = this.application.templates.signalUri(workflowId);
+
+            return this.application.resumeWorkflowAsync(signalUri, action, HttpResponse.BodyHandlers.discarding()).thenApply(Sync::step);
+        }
+
+        // Conductor reports the workflow in headers as well as the body, which is left unread.
+        private static Step step(HttpResponse<?> response) {
+            var headers = response.headers();
+
+            return new Step(response.statusCode(), headers.firstValue("workflowId").orElse(null), headers.firstValue("workflowStatus").orElse(null), null);
+        }
+    }
+}